@@ -0,0 +1,80 @@
+package gamelogic;
+
+import constants.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static constants.Constants.Player.O;
+import static constants.Constants.Player.X;
+
+/**
+ * Measures the operations the search and the game run at every move: scoring a position,
+ * listing its moves, and marking a cell and checking for the end of the game on a {@link State}
+ * <p>Every operation runs on a middle game position of the board, 'X' having just played</p>
+ * @author NkolasN
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+public class EvaluationBenchmark {
+
+    @Param({"3x3", "7x7"})
+    public String board;
+
+    private Position position;
+    private State state;
+    private Coordinate lastMove;
+    private int[] moves;
+
+    @Setup
+    public void setUp() {
+        Rules rules = board.equals("3x3") ? Rules.STANDARD : new Rules(7, 7, 5);
+        int[] played = board.equals("3x3") ? new int[]{4, 0, 8} : new int[]{24, 25, 17, 31, 16};
+
+        position = new Position(rules);
+        for (int move : played) {
+            position.make(move);
+        }
+        state = position.toState();
+        lastMove = rules.coordinateOf(played[played.length - 1]);
+        moves = new int[rules.getCells()];
+    }
+
+    @Benchmark
+    public int calculateScore() {
+        return Minimax.calculateScore(position);
+    }
+
+    @Benchmark
+    public int generateMoves() {
+        return Minimax.generateMoves(position, moves);
+    }
+
+    @Benchmark
+    public Constants.GameState gameEnded() {
+        return state.gameEnded(lastMove, X);
+    }
+
+    /**
+     * Marks the cell of the last move again, which leaves the state as it is,
+     * so this measures finding the cell and passing the turn
+     */
+    @Benchmark
+    public State update() {
+        state.update(lastMove, X, O);
+        return state;
+    }
+}
@@ -0,0 +1,82 @@
+package gamelogic;
+
+import constants.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a whole search of the AI player, from a few positions and to a few depths
+ * <p>A scenario is named after the board, the position and the depth, e.g. {@code 7x7-midgame-d3}
+ * searches the middle game position of the 7x7 board, five in a row, three moves deep. The
+ * transposition table is cleared before every search, so every search starts from scratch</p>
+ * @author NkolasN
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+public class MinimaxBenchmark {
+
+    @Param({"3x3-empty-d9", "3x3-opening-d9", "3x3-midgame-d3", "4x4-opening-d6", "7x7-midgame-d2", "7x7-midgame-d3"})
+    public String scenario;
+
+    @Param({"ALPHA_BETA", "TRANSPOSITION", "SOLUTION_TABLE"})
+    public Constants.SearchMode mode;
+
+    private Minimax minimax;
+    private Position position;
+    private int depth;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] parts = scenario.split("-");
+        Rules rules;
+        int[] moves;
+
+        switch (parts[0]) {
+            case "3x3":
+                rules = Rules.STANDARD;
+                moves = parts[1].equals("opening") ? new int[]{4} : new int[]{4, 0, 8};
+                break;
+            case "4x4":
+                rules = new Rules(4, 4, 4);
+                moves = new int[]{5};
+                break;
+            default:
+                rules = new Rules(7, 7, 5);
+                moves = new int[]{24, 25, 17, 31, 16};
+        }
+
+        position = new Position(rules);
+        if (!parts[1].equals("empty")) {
+            for (int move : moves) {
+                position.make(move);
+            }
+        }
+        depth = Integer.parseInt(parts[2].substring(1));
+        minimax = new Minimax(new State(rules), mode);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTable() {
+        minimax.clearTable();
+    }
+
+    @Benchmark
+    public SearchResult search() {
+        return minimax.minimax(position, depth);
+    }
+}
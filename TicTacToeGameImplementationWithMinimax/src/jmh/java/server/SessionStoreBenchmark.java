@@ -0,0 +1,63 @@
+package server;
+
+import gamelogic.Position;
+import gamelogic.Rules;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures looking up and replacing the games of a {@link SessionStore} full of sessions,
+ * from as many threads as given with {@code -t}
+ * <p>The bytes taken by every session are printed once the store is filled</p>
+ * @author NkolasN
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx1g")
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class SessionStoreBenchmark {
+
+    @Param({"1000000"})
+    public int sessions;
+
+    private SessionStore store;
+    private long[] ids;
+    private Position position;
+
+    @Setup
+    public void setUp() {
+        store = new SessionStore(Rules.STANDARD, sessions, 30, TimeUnit.MINUTES);
+        ids = new long[sessions];
+        for (int i = 0; i < sessions; i++) {
+            ids[i] = store.create();
+        }
+
+        position = new Position(Rules.STANDARD);
+        position.make(4);
+        System.out.printf("%n%d sessions, %.1f bytes per session%n",
+                          store.size(), (double) store.memoryBytes() / store.size());
+    }
+
+    @Benchmark
+    public Position get() {
+        return store.get(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+    }
+
+    @Benchmark
+    public boolean update() {
+        return store.update(ids[ThreadLocalRandom.current().nextInt(ids.length)], position);
+    }
+}
@@ -0,0 +1,249 @@
+import gamelogic.Coordinate;
+import gamelogic.Minimax;
+import gamelogic.Position;
+import gamelogic.Rules;
+import gamelogic.SearchResult;
+import gamelogic.State;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static constants.Constants.Player.O;
+import static constants.Constants.Player.X;
+
+/**
+ * Scores a file of positions with the AI player, without a window
+ * <p>Usage: {@code Analyse input output [width height k [depth [threads]]]}, by default positions of
+ * the standard board searched as deep as in the game, on every core. Every line of the input holds a
+ * board written row by row, see {@link Position#parse(Rules, CharSequence, constants.Constants.Player)},
+ * optionally followed by the player to move. The line of the same number in the output holds the
+ * score, positive if it favours 'O', and the row and column of the best move, {@code - -} if the game
+ * is over, or {@code error} and the reason if the line is not a position</p>
+ * <p>The input is streamed: lines are read in chunks which the workers search, each with its own
+ * {@link Minimax}, while a writer thread writes the chunks back in the order they were read. Only a few
+ * chunks per worker are in flight, the reader waiting for the writer when they are all taken, so the
+ * memory used does not depend on the size of the files. The number of positions per second is printed
+ * every few seconds and at the end</p>
+ * @author NkolasN
+ */
+public class Analyse {
+
+    private static final int CHUNK_LINES = 1024;
+    private static final int CHUNKS_PER_WORKER = 4;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final long PROGRESS_NANOS = 10_000_000_000L;
+
+    private static final Future<Chunk> END = CompletableFuture.completedFuture(null);
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Rules rules = Rules.STANDARD;
+        int depth = -1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String input = null;
+        String output = null;
+
+        try {
+            if (args.length != 2 && (args.length < 5 || args.length > 7)) {
+                throw new IllegalArgumentException();
+            }
+            input = args[0];
+            output = args[1];
+            if (args.length >= 5) {
+                rules = new Rules(Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+            }
+            if (args.length >= 6) {
+                depth = Integer.parseInt(args[5]);
+            }
+            if (args.length == 7) {
+                threads = Integer.parseInt(args[6]);
+            }
+            if (depth < -1 || threads < 1) {
+                throw new IllegalArgumentException();
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Usage: Analyse input output [width height k [depth [threads]]]");
+            System.exit(1);
+        }
+
+        Rules gameRules = rules;
+        int searchDepth = depth >= 0 ? depth : Minimax.depthFor(rules);
+        ThreadLocal<Minimax> engines = ThreadLocal.withInitial(() -> new Minimax(new State(gameRules)));
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "analysis");
+            thread.setDaemon(true);
+            return thread;
+        });
+        BlockingQueue<Future<Chunk>> pending = new ArrayBlockingQueue<>(CHUNKS_PER_WORKER * threads);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                     Files.newInputStream(Paths.get(input)), StandardCharsets.UTF_8), BUFFER_BYTES);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(
+                     Files.newOutputStream(Paths.get(output)), StandardCharsets.UTF_8), BUFFER_BYTES)) {
+
+            ChunkWriter chunkWriter = new ChunkWriter(pending, writer);
+            Thread writerThread = new Thread(chunkWriter, "analysis-writer");
+            writerThread.start();
+
+            try {
+                String[] lines = new String[CHUNK_LINES];
+                int count;
+                do {
+                    count = 0;
+                    String line;
+                    while (count < CHUNK_LINES && (line = reader.readLine()) != null) {
+                        lines[count++] = line;
+                    }
+                    if (count > 0) {
+                        Chunk chunk = new Chunk(Arrays.copyOf(lines, count));
+                        pending.put(workers.submit(() -> chunk.analyse(engines.get(), gameRules, searchDepth)));
+                    }
+                } while (count == CHUNK_LINES && !chunkWriter.failed());
+            } finally {
+                pending.put(END);
+                writerThread.join();
+                workers.shutdownNow();
+            }
+            chunkWriter.report(threads);
+        }
+    }
+
+
+    /**
+     * A run of consecutive lines of the input and, once searched, the lines of the output
+     */
+    private static class Chunk {
+
+        private final String[] lines;
+        private final StringBuilder output;
+
+        Chunk(String[] lines) {
+            this.lines = lines;
+            output = new StringBuilder(lines.length * 16);
+        }
+
+        /**
+         * Searches the position of every line
+         */
+        Chunk analyse(Minimax minimax, Rules rules, int depth) {
+            for (String line : lines) {
+                try {
+                    Position position = parse(rules, line.trim());
+                    // what the table holds from earlier positions changes the scores of a search cut
+                    // off by its depth, so such positions start afresh: the output does not depend
+                    // on which worker searched them
+                    if (depth < position.emptyCount()) {
+                        minimax.clearTable();
+                    }
+                    SearchResult result = minimax.minimax(position, depth);
+                    output.append(result.getScore());
+                    if (result.getCell() < 0) {
+                        output.append(" - -");
+                    } else {
+                        Coordinate move = result.getMove();
+                        output.append(' ').append(move.getX()).append(' ').append(move.getY());
+                    }
+                } catch (IllegalArgumentException e) {
+                    output.append("error ").append(e.getMessage());
+                }
+                output.append('\n');
+            }
+            return this;
+        }
+
+        /**
+         * Builds the position of a line: the board, then optionally whitespace and the player to move
+         */
+        private static Position parse(Rules rules, String line) {
+            int end = 0;
+            while (end < line.length() && !Character.isWhitespace(line.charAt(end))) {
+                end++;
+            }
+            String turn = line.substring(end).trim();
+
+            if (turn.isEmpty()) {
+                return Position.parse(rules, line.substring(0, end), null);
+            }
+            if (!turn.equalsIgnoreCase("X") && !turn.equalsIgnoreCase("O")) {
+                throw new IllegalArgumentException("The turn must be X or O, given " + turn);
+            }
+            return Position.parse(rules, line.substring(0, end), turn.equalsIgnoreCase("X") ? X : O);
+        }
+    }
+
+
+    /**
+     * Writes the searched chunks in the order they were read and counts the positions. If the
+     * output cannot be written, the chunks still in flight are drained without being written
+     */
+    private static class ChunkWriter implements Runnable {
+
+        private final BlockingQueue<Future<Chunk>> pending;
+        private final Writer writer;
+        private final long start = System.nanoTime();
+        private long positions;
+        private volatile Exception failure;
+
+        ChunkWriter(BlockingQueue<Future<Chunk>> pending, Writer writer) {
+            this.pending = pending;
+            this.writer = writer;
+        }
+
+        @Override
+        public void run() {
+            long lastReport = start;
+
+            try {
+                for (Future<Chunk> next = pending.take(); next != END; next = pending.take()) {
+                    if (failure != null) {
+                        next.cancel(false);
+                        continue;
+                    }
+                    try {
+                        Chunk chunk = next.get();
+                        writer.append(chunk.output);
+                        positions += chunk.lines.length;
+                    } catch (ExecutionException | IOException e) {
+                        failure = e;
+                        continue;
+                    }
+
+                    long now = System.nanoTime();
+                    if (now - lastReport >= PROGRESS_NANOS) {
+                        System.err.printf("%,d positions, %,.0f positions/s%n", positions, positions / ((now - start) / 1e9));
+                        lastReport = now;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        boolean failed() {
+            return failure != null;
+        }
+
+        void report(int threads) throws IOException {
+            if (failure != null) {
+                throw new IOException("Analysis failed after " + positions + " positions", failure);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%,d positions on %d threads in %.2f s, %,.0f positions/s%n",
+                              positions, threads, seconds, positions / seconds);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+import constants.Constants;
+import gamelogic.Rules;
+import gamelogic.Tablebase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Solves a game into its {@link Tablebase}, which the AI player then plays perfectly from
+ * <p>Usage: {@code BuildTablebase [width height k [threads]]}, by default the 4x4 board with 4 in a
+ * row on every core. The tablebase is written to {@link Constants#TABLEBASE_DIRECTORY}; running the
+ * program again after it was interrupted carries on from the last layer solved</p>
+ * @author NkolasN
+ */
+public class BuildTablebase {
+
+    public static void main(String[] args) throws IOException {
+        Rules rules = new Rules(4, 4, 4);
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        try {
+            if (args.length != 0 && args.length != 3 && args.length != 4) {
+                throw new IllegalArgumentException();
+            }
+            if (args.length >= 3) {
+                rules = new Rules(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            }
+            if (args.length == 4) {
+                threads = Integer.parseInt(args[3]);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Usage: BuildTablebase [width height k [threads]]");
+            System.exit(1);
+        }
+
+        Path directory = Paths.get(Constants.TABLEBASE_DIRECTORY);
+        Files.createDirectories(directory);
+        Path file = directory.resolve(Tablebase.fileName(rules));
+
+        System.out.println("Solving " + rules + " into " + file + " on " + threads + " threads");
+        long start = System.nanoTime();
+        Tablebase.generate(file, rules, threads, layer ->
+                System.out.printf("Layer %2d solved, %.1f s%n", layer, (System.nanoTime() - start) / 1e9));
+
+        try (Tablebase tablebase = Tablebase.open(file)) {
+            System.out.printf("%,d entries, %,d bytes, in %.1f s%n",
+                              tablebase.size(), Files.size(file), (System.nanoTime() - start) / 1e9);
+        }
+    }
+}
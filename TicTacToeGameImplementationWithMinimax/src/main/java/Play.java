@@ -1,12 +1,27 @@
+import gamelogic.Rules;
+import gamelogic.SolutionTable;
 import gui.Interface;
 
 /**
  * Starts a new game
+ * <p>Usage: {@code Play [width height k]}, the standard 3x3 game being played by default</p>
  * @author NkolasN
  */
 public class Play {
 
     public static void main(String[] args){
-        Interface newGame=new Interface();
+        Rules rules = Rules.STANDARD;
+
+        if (args.length == 3) {
+            rules = new Rules(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+        } else if (args.length != 0) {
+            System.err.println("Usage: Play [width height k]");
+            System.exit(1);
+        }
+
+        if (rules.equals(Rules.STANDARD)) {
+            System.out.println(SolutionTable.getInstance());
+        }
+        Interface newGame=new Interface(rules);
     }
 }
@@ -0,0 +1,26 @@
+import protocol.EngineProtocol;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Plays through text commands on the standard input and output instead of a window, see
+ * {@link EngineProtocol} for the commands
+ * <p>Usage: {@code Protocol}. Only the game logic is loaded, never Swing or AWT, so it runs on
+ * headless machines</p>
+ * @author NkolasN
+ */
+public class Protocol {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 0) {
+            System.err.println("Usage: Protocol");
+            System.exit(1);
+        }
+
+        new EngineProtocol(new InputStreamReader(System.in, StandardCharsets.UTF_8),
+                           new OutputStreamWriter(System.out, StandardCharsets.UTF_8)).run();
+    }
+}
@@ -0,0 +1,68 @@
+import constants.Constants;
+import gamelogic.Coordinate;
+import gamelogic.Minimax;
+import gamelogic.Position;
+import gamelogic.Rules;
+import gamelogic.SearchResult;
+import gamelogic.State;
+
+/**
+ * Reports how the lazy SMP search scales with the number of threads
+ * <p>Usage: {@code SearchScaling [threads [width height k depth]]}. The empty board is searched
+ * with 1 to {@code threads} threads, every thread count on a fresh transposition table, and the
+ * time, nodes and speedup of every run are printed. The score and move of every run are checked
+ * against the single-threaded search, and the program exits with status 1 if any differs</p>
+ * @author NkolasN
+ */
+public class SearchScaling {
+
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        Rules rules = new Rules(4, 4, 4);
+        int depth = 8;
+
+        if (args.length == 1 || args.length == 5) {
+            threads = Integer.parseInt(args[0]);
+        }
+        if (args.length == 5) {
+            rules = new Rules(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            depth = Integer.parseInt(args[4]);
+        } else if (args.length > 1) {
+            System.err.println("Usage: SearchScaling [threads [width height k depth]]");
+            System.exit(1);
+        }
+
+        Position root = new Position(rules);
+        System.out.println("Lazy SMP on " + rules + ", depth " + depth);
+        System.out.println("threads       time (ms)            nodes   speedup   result");
+
+        String expected = null;
+        long singleThreaded = 0;
+        boolean mismatch = false;
+
+        for (int n = 1; n <= threads; n++) {
+            Minimax minimax = new Minimax(new State(rules), Constants.SearchMode.TRANSPOSITION);
+            minimax.setParallelism(n, Constants.ParallelMode.LAZY_SMP);
+
+            long start = System.nanoTime();
+            SearchResult result = minimax.minimax(root, depth);
+            long time = System.nanoTime() - start;
+            minimax.setParallelism(1);
+
+            Coordinate move = result.getMove();
+            String outcome = result.getScore() + " at " + move.getX() + "," + move.getY();
+            if (n == 1) {
+                expected = outcome;
+                singleThreaded = time;
+            } else if (!outcome.equals(expected)) {
+                mismatch = true;
+                outcome += " (expected " + expected + ")";
+            }
+
+            System.out.printf("%7d %15.1f %16d %9.2f   %s%n",
+                              n, time / 1e6, minimax.getNodesVisited(), (double) singleThreaded / time, outcome);
+        }
+
+        System.exit(mismatch ? 1 : 0);
+    }
+}
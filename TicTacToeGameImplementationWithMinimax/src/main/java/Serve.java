@@ -0,0 +1,61 @@
+import gamelogic.Rules;
+import server.MoveServer;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Serves the moves of the AI player over HTTP on the loopback address, see {@link MoveServer}
+ * <p>Usage: {@code Serve [port [engines [board...]]]}, by default on port 8080 with one engine for
+ * every core. Only the boards given, written as {@code 7x7k4} for a 7x7 board where 4 in a row win,
+ * are served, the standard one if none is</p>
+ * @author NkolasN
+ */
+public class Serve {
+
+    public static void main(String[] args) throws IOException {
+        int port = 8080;
+        int engines = Runtime.getRuntime().availableProcessors();
+        Set<Rules> rules = new LinkedHashSet<>();
+
+        try {
+            if (args.length > 0) {
+                port = Integer.parseInt(args[0]);
+            }
+            if (args.length > 1) {
+                engines = Integer.parseInt(args[1]);
+            }
+            for (int i = 2; i < args.length; i++) {
+                rules.add(parseRules(args[i]));
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Usage: Serve [port [engines [board...]]], boards written as 7x7k4");
+            System.exit(1);
+        }
+        if (rules.isEmpty()) {
+            rules.add(Rules.STANDARD);
+        }
+
+        MoveServer server = new MoveServer(port, engines, rules);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+
+        System.out.println("Serving moves of " + rules + " on http://" + server.getAddress().getHostString() + ":"
+                           + server.getAddress().getPort() + "/move?board=---------"
+                           + (server.usesVirtualThreads() ? " on virtual threads" : " on a pool of threads"));
+    }
+
+    /**
+     * Reads the rules of a board written as {@code <width>x<height>k<k>}
+     */
+    private static Rules parseRules(String board) {
+        int x = board.indexOf('x');
+        int k = board.indexOf('k');
+        if (x < 0 || k < x) {
+            throw new IllegalArgumentException(board);
+        }
+        return new Rules(Integer.parseInt(board.substring(0, x)), Integer.parseInt(board.substring(x + 1, k)),
+                         Integer.parseInt(board.substring(k + 1)));
+    }
+}
@@ -0,0 +1,214 @@
+import constants.Constants;
+import gamelogic.GameLog;
+import gamelogic.LatencyHistogram;
+import gamelogic.Minimax;
+import gamelogic.Position;
+import gamelogic.Rules;
+import gamelogic.State;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static constants.Constants.GameState;
+import static constants.Constants.LARGE_BOARD_MINIMAX_DEPTH;
+import static constants.Constants.MINIMAX_DEPTH;
+
+/**
+ * Plays games between the AI player and itself, or between the AI player and a random player,
+ * without a window
+ * <p>Usage: {@code Simulate [games [engine|random [threads [width height k [log]]]]]}, by default a
+ * million games of the standard board against the random player on every core. Each thread plays
+ * whole games with its own search, and the number of games per second, the outcomes and the
+ * percentiles of the time the AI player took per move are printed at the end. Given a directory,
+ * every game is also appended to a {@link GameLog} there</p>
+ * <p>The AI player plays 'O' and searches as deep as in the game; 'X' plays first. Against itself
+ * the first move of 'X' is random, so that not every game is the same. Only the game logic is
+ * loaded, never Swing or AWT, so it runs on headless machines</p>
+ * @author NkolasN
+ */
+public class Simulate {
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        long games = 1_000_000;
+        boolean selfPlay = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Rules rules = Rules.STANDARD;
+        String logDirectory = null;
+
+        try {
+            if (args.length > 7 || args.length == 4 || args.length == 5) {
+                throw new IllegalArgumentException();
+            }
+            if (args.length > 0) {
+                games = Long.parseLong(args[0]);
+            }
+            if (args.length > 1) {
+                if (!args[1].equals("engine") && !args[1].equals("random")) {
+                    throw new IllegalArgumentException();
+                }
+                selfPlay = args[1].equals("engine");
+            }
+            if (args.length > 2) {
+                threads = Integer.parseInt(args[2]);
+            }
+            if (args.length >= 6) {
+                rules = new Rules(Integer.parseInt(args[3]), Integer.parseInt(args[4]), Integer.parseInt(args[5]));
+            }
+            if (args.length == 7) {
+                logDirectory = args[6];
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Usage: Simulate [games [engine|random [threads [width height k [log]]]]]");
+            System.exit(1);
+        }
+
+        GameLog log = logDirectory == null ? null : new GameLog(Paths.get(logDirectory), rules);
+
+        AtomicLong remaining = new AtomicLong(games);
+        List<Simulation> simulations = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+
+        for (int i = 0; i < threads; i++) {
+            Simulation simulation = new Simulation(rules, selfPlay, i, log);
+            Thread worker = new Thread(() -> {
+                while (remaining.getAndDecrement() > 0) {
+                    simulation.play();
+                }
+            }, "simulation-" + i);
+            simulations.add(simulation);
+            workers.add(worker);
+        }
+
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long time = System.nanoTime() - start;
+        if (log != null) {
+            log.close();
+        }
+
+        Simulation total = new Simulation(rules, selfPlay, -1, null);
+        for (Simulation simulation : simulations) {
+            total.add(simulation);
+        }
+        total.report(threads, time);
+    }
+
+
+    /**
+     * Plays games on one thread and keeps their statistics
+     */
+    private static class Simulation {
+
+        private final Rules rules;
+        private final boolean selfPlay;
+        private final Minimax minimax;
+        private final SplittableRandom random;
+        private final GameLog log;
+        private final int[] moves;
+        private final int depth;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final long[] outcomes = new long[GameState.values().length];
+        private long games;
+
+        Simulation(Rules rules, boolean selfPlay, int seed, GameLog log) {
+            this.rules = rules;
+            this.selfPlay = selfPlay;
+            this.log = log;
+            moves = new int[rules.getCells()];
+            minimax = new Minimax(new State(rules));
+            random = new SplittableRandom(seed);
+            depth = rules.getCells() <= Rules.STANDARD.getCells() ? MINIMAX_DEPTH : LARGE_BOARD_MINIMAX_DEPTH;
+        }
+
+        /**
+         * Plays a game until it is won or drawn
+         */
+        void play() {
+            Position position = new Position(rules);
+            int count = 0;
+
+            while (!position.isGameOver()) {
+                int cell;
+
+                if (position.getTurn() == Constants.Player.O || selfPlay && position.emptyCount() < rules.getCells()) {
+                    long start = System.nanoTime();
+                    cell = minimax.minimax(position, depth).getCell();
+                    latencies.record(System.nanoTime() - start);
+                } else {
+                    cell = randomMove(position);
+                }
+                position.make(cell);
+                moves[count++] = cell;
+            }
+
+            GameState outcome = !position.hasWinner() ? GameState.DRAW :
+                                position.getTurn() == Constants.Player.X ? GameState.O_WINS : GameState.X_WINS;
+            outcomes[outcome.ordinal()]++;
+            games++;
+
+            if (log != null) {
+                try {
+                    log.append(moves, count, outcome);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        /**
+         * Picks one of the empty cells at random
+         */
+        private int randomMove(Position position) {
+            int n = random.nextInt(position.emptyCount());
+
+            for (int word = 0; ; word++) {
+                long empty = position.emptyCells(word);
+                int count = Long.bitCount(empty);
+                if (n < count) {
+                    for (; n > 0; n--) {
+                        empty &= empty - 1;
+                    }
+                    return word << 6 | Long.numberOfTrailingZeros(empty);
+                }
+                n -= count;
+            }
+        }
+
+        /**
+         * Adds the statistics of the games of another simulation to this one
+         */
+        void add(Simulation other) {
+            games += other.games;
+            for (int i = 0; i < outcomes.length; i++) {
+                outcomes[i] += other.outcomes[i];
+            }
+            latencies.add(other.latencies);
+        }
+
+        void report(int threads, long time) {
+            System.out.printf("%d games of %s, AI player against %s, on %d threads in %.2f s%n",
+                              games, rules, selfPlay ? "itself" : "random moves", threads, time / 1e9);
+            System.out.printf("Games per second: %.0f%n", games / (time / 1e9));
+            System.out.printf("Outcomes: X wins %s, O wins %s, draws %s%n",
+                              share(GameState.X_WINS), share(GameState.O_WINS), share(GameState.DRAW));
+            System.out.printf("AI move latency (us) over %d moves: p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                              latencies.count(), latencies.percentile(50) / 1e3, latencies.percentile(90) / 1e3,
+                              latencies.percentile(99) / 1e3, latencies.percentile(99.9) / 1e3, latencies.max() / 1e3);
+        }
+
+        private String share(GameState outcome) {
+            long count = outcomes[outcome.ordinal()];
+            return String.format("%d (%.2f%%)", count, games == 0 ? 0.0 : 100.0 * count / games);
+        }
+    }
+}
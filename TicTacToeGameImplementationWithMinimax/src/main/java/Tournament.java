@@ -0,0 +1,481 @@
+import constants.Constants;
+import gamelogic.Engine;
+import gamelogic.Minimax;
+import gamelogic.MonteCarloTreeSearch;
+import gamelogic.Position;
+import gamelogic.Rules;
+import gamelogic.SearchResult;
+import gamelogic.State;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static constants.Constants.GameState;
+
+/**
+ * Plays matches between configurations of the AI player, to weigh how strong a setting makes it
+ * against how much it costs, without a window
+ * <p>Usage: {@code Tournament round-robin|gauntlet width height k openings output engine engine...}.
+ * In a round robin every engine plays every other one, in a gauntlet the first engine plays each of
+ * the others. An engine is written {@code minimax[:option=value,...]}, with the options {@code depth}
+ * (as deep as in the game by default), {@code mode} (one of {@link Constants.SearchMode}) and
+ * {@code weights}, the scores of a line holding 1, 2... up to k marks of one player separated by
+ * slashes (see {@link Minimax#setSequenceScores(int...)}), or {@code mcts[:playouts=count]}</p>
+ * <p>The games start from a number of distinct openings, each of a few random moves drawn once for
+ * the whole tournament, so that games between deterministic engines are not all the same. Every
+ * pairing plays every opening twice, each engine playing 'X' once. Every game starts with empty
+ * transposition tables, and the Monte Carlo tree searches of a game are created for it with seeds
+ * drawn from its opening, pairing and sides, so the outcome of a game does not depend on the games
+ * played before it on the same thread, and a tournament between engines without a time limit plays
+ * the same games on every run. Games are played in parallel on every core, each thread with its
+ * own minimax searches</p>
+ * <p>For every engine, against each opponent and in total, the wins, draws, losses, share of the
+ * points, moves, average time per move and nodes searched per second are printed and written to the
+ * output, as JSON if its name ends with {@code .json} and as CSV otherwise. For the Monte Carlo tree
+ * search, the nodes are its playouts</p>
+ * @author NkolasN
+ */
+public class Tournament {
+
+    private static final int OPENING_PLIES = 2;
+    private static final long OPENING_SEED = 0x5EED;
+    private static final long PROGRESS_NANOS = 10_000_000_000L;
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        boolean gauntlet = false;
+        Rules rules = null;
+        int openingCount = 0;
+        String output = null;
+        List<Contender> contenders = new ArrayList<>();
+
+        try {
+            if (args.length < 8 || !args[0].equals("round-robin") && !args[0].equals("gauntlet")) {
+                throw new IllegalArgumentException();
+            }
+            gauntlet = args[0].equals("gauntlet");
+            rules = new Rules(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            openingCount = Integer.parseInt(args[4]);
+            output = args[5];
+            for (int i = 6; i < args.length; i++) {
+                contenders.add(new Contender(args[i], rules));
+            }
+            if (openingCount < 1) {
+                throw new IllegalArgumentException();
+            }
+        } catch (IllegalArgumentException e) {
+            if (e.getMessage() != null) {
+                System.err.println(e.getMessage());
+            }
+            System.err.println("Usage: Tournament round-robin|gauntlet width height k openings output engine engine...");
+            System.err.println("       engine: minimax[:depth=<plies>,mode=<search mode>,weights=<1 mark>/<2 marks>/...] or mcts[:playouts=<count>]");
+            System.exit(1);
+        }
+
+        List<Position> openings = openings(rules, openingCount);
+        if (openings.size() < openingCount) {
+            System.err.println("Only " + openings.size() + " distinct openings of " + OPENING_PLIES + " moves on " + rules);
+        }
+
+        int engines = contenders.size();
+        List<int[]> pairings = new ArrayList<>();
+        for (int a = 0; a < (gauntlet ? 1 : engines); a++) {
+            for (int b = a + 1; b < engines; b++) {
+                pairings.add(new int[]{a, b});
+            }
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        Rules gameRules = rules;
+        ThreadLocal<Engine[]> players = ThreadLocal.withInitial(() -> {
+            Engine[] created = new Engine[engines];
+            for (int i = 0; i < engines; i++) {
+                if (!contenders.get(i).mcts) {
+                    created[i] = contenders.get(i).create(gameRules, 0);
+                }
+            }
+            return created;
+        });
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "tournament");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<Future<Game>> games = new ArrayList<>();
+        for (int[] pairing : pairings) {
+            for (Position opening : openings) {
+                for (int side = 0; side < 2; side++) {
+                    Game game = new Game(opening, pairing[side], pairing[side ^ 1], games.size());
+                    games.add(workers.submit(() -> game.play(players.get(), contenders)));
+                }
+            }
+        }
+
+        System.out.printf("%s of %d engines on %s: %d games from %d openings on %d threads%n",
+                          gauntlet ? "Gauntlet" : "Round robin", engines, rules, games.size(), openings.size(), threads);
+
+        Record[][] records = new Record[engines][engines];
+        for (Record[] row : records) {
+            for (int i = 0; i < engines; i++) {
+                row[i] = new Record();
+            }
+        }
+
+        long start = System.nanoTime();
+        long lastReport = start;
+        try {
+            for (int i = 0; i < games.size(); i++) {
+                Game game = games.get(i).get();
+                records[game.x][game.o].add(game, true);
+                records[game.o][game.x].add(game, false);
+
+                long now = System.nanoTime();
+                if (now - lastReport >= PROGRESS_NANOS) {
+                    System.err.printf("%d of %d games, %.1f games/s%n", i + 1, games.size(), (i + 1) / ((now - start) / 1e9));
+                    lastReport = now;
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        System.out.printf("Played in %.2f s%n", (System.nanoTime() - start) / 1e9);
+
+        Record[] totals = new Record[engines];
+        for (int a = 0; a < engines; a++) {
+            totals[a] = new Record();
+            for (Record record : records[a]) {
+                totals[a].add(record);
+            }
+        }
+
+        System.out.printf("%-40s %7s %6s %6s %6s %7s %12s %14s%n",
+                          "engine", "games", "wins", "draws", "losses", "score", "ms/move", "nodes/s");
+        for (int a = 0; a < engines; a++) {
+            Record t = totals[a];
+            System.out.printf("%-40s %7d %6d %6d %6d %6.1f%% %12.3f %14.0f%n", contenders.get(a).name,
+                              t.games, t.wins, t.draws, t.losses, 100 * t.score(), t.millisPerMove(), t.nodesPerSecond());
+        }
+
+        try (Writer writer = Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)) {
+            if (output.endsWith(".json")) {
+                writeJson(writer, rules, gauntlet, openings.size(), contenders, records, totals);
+            } else {
+                writeCsv(writer, contenders, records, totals);
+            }
+        }
+    }
+
+
+    /**
+     * Draws distinct openings, positions reached by a few random moves which no rotation or
+     * reflection of another opening reaches, and where the game is not over
+     * @param rules the rules of the game
+     * @param count the number of openings wanted
+     * @return the openings, fewer than wanted if the board has fewer
+     */
+    private static List<Position> openings(Rules rules, int count) {
+        SplittableRandom random = new SplittableRandom(OPENING_SEED);
+        int plies = Math.min(OPENING_PLIES, rules.getCells() - 1);
+        List<Position> openings = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+
+        for (int attempt = 0; openings.size() < count && attempt < 100 * count; attempt++) {
+            Position position = new Position(rules);
+            for (int ply = 0; ply < plies && !position.isGameOver(); ply++) {
+                position.make(randomMove(position, random));
+            }
+            if (!position.isGameOver() && seen.add(position.canonicalHash())) {
+                openings.add(position);
+            }
+        }
+        return openings;
+    }
+
+    /**
+     * Picks one of the empty cells at random
+     */
+    private static int randomMove(Position position, SplittableRandom random) {
+        int n = random.nextInt(position.emptyCount());
+
+        for (int word = 0; ; word++) {
+            long empty = position.emptyCells(word);
+            int count = Long.bitCount(empty);
+            if (n < count) {
+                for (; n > 0; n--) {
+                    empty &= empty - 1;
+                }
+                return word << 6 | Long.numberOfTrailingZeros(empty);
+            }
+            n -= count;
+        }
+    }
+
+    private static void writeCsv(Writer writer, List<Contender> contenders, Record[][] records, Record[] totals)
+            throws IOException {
+        writer.write("engine,opponent,games,wins,draws,losses,score,moves,ms_per_move,nodes_per_second\n");
+        for (int a = 0; a < contenders.size(); a++) {
+            for (int b = 0; b < contenders.size(); b++) {
+                if (records[a][b].games > 0) {
+                    writeCsvLine(writer, contenders.get(a).name, contenders.get(b).name, records[a][b]);
+                }
+            }
+            writeCsvLine(writer, contenders.get(a).name, "all", totals[a]);
+        }
+    }
+
+    private static void writeCsvLine(Writer writer, String engine, String opponent, Record record) throws IOException {
+        writer.write(String.format(Locale.ROOT, "\"%s\",\"%s\",%d,%d,%d,%d,%.4f,%d,%.4f,%.0f%n",
+                                   engine.replace("\"", "\"\""), opponent.replace("\"", "\"\""),
+                                   record.games, record.wins, record.draws, record.losses, record.score(),
+                                   record.moves, record.millisPerMove(), record.nodesPerSecond()));
+    }
+
+    private static void writeJson(Writer writer, Rules rules, boolean gauntlet, int openings, List<Contender> contenders,
+                                  Record[][] records, Record[] totals) throws IOException {
+        writer.write(String.format(Locale.ROOT,
+                                   "{\"rules\":{\"width\":%d,\"height\":%d,\"k\":%d},\"format\":\"%s\",\"openings\":%d,\"engines\":[",
+                                   rules.getWidth(), rules.getHeight(), rules.getK(),
+                                   gauntlet ? "gauntlet" : "round-robin", openings));
+        for (int a = 0; a < contenders.size(); a++) {
+            writer.write(a == 0 ? "\n  {" : ",\n  {");
+            writeJsonFields(writer, contenders.get(a).name, "engine", totals[a]);
+            writer.write(",\"opponents\":[");
+            boolean first = true;
+            for (int b = 0; b < contenders.size(); b++) {
+                if (records[a][b].games > 0) {
+                    writer.write(first ? "\n    {" : ",\n    {");
+                    writeJsonFields(writer, contenders.get(b).name, "opponent", records[a][b]);
+                    writer.write('}');
+                    first = false;
+                }
+            }
+            writer.write("]}");
+        }
+        writer.write("\n]}\n");
+    }
+
+    private static void writeJsonFields(Writer writer, String name, String key, Record record) throws IOException {
+        writer.write(String.format(Locale.ROOT,
+                                   "\"%s\":\"%s\",\"games\":%d,\"wins\":%d,\"draws\":%d,\"losses\":%d,\"score\":%.4f,"
+                                   + "\"moves\":%d,\"msPerMove\":%.4f,\"nodesPerSecond\":%.0f",
+                                   key, name.replace("\\", "\\\\").replace("\"", "\\\""),
+                                   record.games, record.wins, record.draws, record.losses, record.score(),
+                                   record.moves, record.millisPerMove(), record.nodesPerSecond()));
+    }
+
+
+    /**
+     * A configuration of the AI player taking part in the tournament, built from its description
+     */
+    private static class Contender {
+
+        private final String name;
+        private final boolean mcts;
+        private int depth = -1;
+        private Constants.SearchMode mode = Constants.SEARCH_MODE;
+        private int[] weights;
+        private int playouts = Constants.MCTS_PLAYOUTS;
+
+        /**
+         * @param description the engine and its options, see {@link Tournament}
+         * @param rules the rules of the game, which the options are checked against
+         * @throws IllegalArgumentException if the description is invalid
+         */
+        Contender(String description, Rules rules) {
+            name = description;
+            int colon = description.indexOf(':');
+            String engine = colon < 0 ? description : description.substring(0, colon);
+            if (!engine.equals("minimax") && !engine.equals("mcts")) {
+                throw new IllegalArgumentException("Unknown engine " + engine + " in " + description);
+            }
+            mcts = engine.equals("mcts");
+
+            if (colon >= 0) {
+                for (String option : description.substring(colon + 1).split(",")) {
+                    int equals = option.indexOf('=');
+                    if (equals < 0) {
+                        throw new IllegalArgumentException("Options are written <name>=<value>, given " + option);
+                    }
+                    setOption(option.substring(0, equals), option.substring(equals + 1));
+                }
+            }
+            // fails now rather than on the worker threads
+            create(rules, 0);
+        }
+
+        private void setOption(String option, String value) {
+            switch (mcts ? "mcts " + option : option) {
+                case "depth":
+                    depth = Integer.parseInt(value);
+                    break;
+                case "mode":
+                    mode = Constants.SearchMode.valueOf(value.toUpperCase(Locale.ROOT));
+                    break;
+                case "weights":
+                    String[] scores = value.split("/");
+                    weights = new int[scores.length];
+                    for (int i = 0; i < scores.length; i++) {
+                        weights[i] = Integer.parseInt(scores[i]);
+                    }
+                    break;
+                case "mcts playouts":
+                    playouts = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + option + " in " + name);
+            }
+        }
+
+        /**
+         * @param rules the rules of the game
+         * @param seed the seed of the random moves of a Monte Carlo tree search
+         * @return a new engine of this configuration
+         */
+        Engine create(Rules rules, long seed) {
+            if (mcts) {
+                return new MonteCarloTreeSearch(rules, playouts, 0, Constants.MCTS_TREE_NODES, seed);
+            }
+            Minimax minimax = new Minimax(new State(rules), mode);
+            minimax.setDepth(depth);
+            if (weights != null) {
+                minimax.setSequenceScores(weights);
+            }
+            return minimax;
+        }
+    }
+
+
+    /**
+     * A game between two engines from an opening, and what each of them spent on it
+     */
+    private static class Game {
+
+        private final Position opening;
+        private final int x;
+        private final int o;
+        private final long seed;
+        private GameState outcome;
+        /* for 'X' then 'O': the number of moves, the time they took and the nodes searched */
+        private final long[] moves = new long[2];
+        private final long[] nanos = new long[2];
+        private final long[] nodes = new long[2];
+
+        /**
+         * @param seed the number of the game in the tournament, which the Monte Carlo tree searches
+         *             of the game draw their seeds from
+         */
+        Game(Position opening, int x, int o, long seed) {
+            this.opening = opening;
+            this.x = x;
+            this.o = o;
+            this.seed = seed;
+        }
+
+        /**
+         * Plays the game until it is won or drawn
+         * @param threadEngines the minimax searches of the thread, by their index in the tournament
+         * @param contenders the configurations of the engines
+         */
+        Game play(Engine[] threadEngines, List<Contender> contenders) {
+            Engine[] engines = threadEngines.clone();
+            for (int side = 0; side < 2; side++) {
+                int index = side == 0 ? x : o;
+                if (engines[index] == null) {
+                    engines[index] = contenders.get(index).create(opening.getRules(), 2 * seed + side);
+                } else if (engines[index] instanceof Minimax) {
+                    ((Minimax) engines[index]).clearTable();
+                }
+            }
+
+            Position position = opening.copy();
+            while (!position.isGameOver()) {
+                int side = position.getTurn() == Constants.Player.X ? 0 : 1;
+                Engine engine = engines[side == 0 ? x : o];
+
+                long start = System.nanoTime();
+                SearchResult result = engine.search(position);
+                nanos[side] += System.nanoTime() - start;
+                nodes[side] += engine.getNodesVisited();
+                moves[side]++;
+                position.make(result.getCell());
+            }
+
+            outcome = !position.hasWinner() ? GameState.DRAW :
+                      position.getTurn() == Constants.Player.X ? GameState.O_WINS : GameState.X_WINS;
+            return this;
+        }
+    }
+
+
+    /**
+     * The results of an engine over a number of games
+     */
+    private static class Record {
+
+        private long games;
+        private long wins;
+        private long draws;
+        private long losses;
+        private long moves;
+        private long nanos;
+        private long nodes;
+
+        /**
+         * Counts a game for one of its players
+         * @param game the game played
+         * @param asX whether the engine played 'X'
+         */
+        void add(Game game, boolean asX) {
+            int side = asX ? 0 : 1;
+            games++;
+            if (game.outcome == GameState.DRAW) {
+                draws++;
+            } else if (game.outcome == (asX ? GameState.X_WINS : GameState.O_WINS)) {
+                wins++;
+            } else {
+                losses++;
+            }
+            moves += game.moves[side];
+            nanos += game.nanos[side];
+            nodes += game.nodes[side];
+        }
+
+        void add(Record other) {
+            games += other.games;
+            wins += other.wins;
+            draws += other.draws;
+            losses += other.losses;
+            moves += other.moves;
+            nanos += other.nanos;
+            nodes += other.nodes;
+        }
+
+        /**
+         * @return the share of the points won, a draw counting as half a win
+         */
+        double score() {
+            return games == 0 ? 0 : (wins + draws / 2.0) / games;
+        }
+
+        double millisPerMove() {
+            return moves == 0 ? 0 : nanos / 1e6 / moves;
+        }
+
+        double nodesPerSecond() {
+            return nanos == 0 ? 0 : nodes / (nanos / 1e9);
+        }
+    }
+}
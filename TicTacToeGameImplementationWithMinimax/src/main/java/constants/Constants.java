@@ -7,11 +7,27 @@ package constants;
  */
 public class Constants {
 
-    public static final int BOARD_LENGTH_HORIZONTAL = 300;
-    public static final int BOARD_LENGTH_VERTICAL = 370;
+    public static final int CELL_SIZE = 100;
+    public static final int MAX_BOARD_LENGTH = 600;
+    public static final int STATUS_BAR_HEIGHT = 70;
     public static final int RESTART_BUTTON_WIDTH = 70;
     public static final int RESTART_BUTTON_HEIGHT = 50;
     public static final int MINIMAX_DEPTH = 15;
+    public static final int LARGE_BOARD_MINIMAX_DEPTH = 3;
+    public static final SearchMode SEARCH_MODE = SearchMode.SOLUTION_TABLE;
+    public static final int TRANSPOSITION_TABLE_SIZE = 1 << 16;
+    public static final EngineType ENGINE = EngineType.MINIMAX;
+    public static final int MCTS_PLAYOUTS = 200_000;
+    public static final long MCTS_TIME_MILLIS = 1000;
+    public static final int MCTS_TREE_NODES = 1 << 20;
+    public static final int SEARCH_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final ParallelMode PARALLEL_MODE = ParallelMode.LAZY_SMP;
+    public static final boolean SHOW_SEARCH_STATISTICS = false;
+    public static final boolean PONDER = true;
+    public static final String GAME_LOG_DIRECTORY = "games";
+    public static final String TABLEBASE_DIRECTORY = "tablebases";
+    public static final String TABLE_SNAPSHOT_DIRECTORY = "snapshots";
+    public static final long SERVER_NODE_LIMIT = 20_000_000;
 
     /**
      * An enum representing the game status.
@@ -28,4 +44,34 @@ public class Constants {
         X,O
     }
 
+
+    /**
+     * An enum representing the search used by the AI player: the plain full-width
+     * minimax, minimax with alpha-beta pruning, alpha-beta pruning backed by a
+     * transposition table shared by symmetric positions, or a lookup in the precomputed
+     * solution of the game (falling back to the transposition search for shallow depths)
+     */
+    public enum SearchMode {
+        MINIMAX, ALPHA_BETA, TRANSPOSITION, SOLUTION_TABLE
+    }
+
+
+    /**
+     * An enum representing the AI player: the minimax search, with the search mode above, or
+     * a Monte Carlo tree search playing random games, for boards too large to search in full
+     */
+    public enum EngineType {
+        MINIMAX, MCTS
+    }
+
+
+    /**
+     * An enum representing how a search is spread over several threads: either the
+     * root moves are shared out between the threads, or every thread searches the whole
+     * position in its own move order and they share one transposition table (lazy SMP)
+     */
+    public enum ParallelMode {
+        ROOT_SPLIT, LAZY_SMP
+    }
+
 }
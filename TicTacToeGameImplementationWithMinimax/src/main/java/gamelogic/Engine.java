@@ -0,0 +1,33 @@
+package gamelogic;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * An AI player: finds the move to play in a position, within limits of its own such as
+ * a depth or a number of playouts.
+ * <p>A search runs on the calling thread and can be stopped from another one with {@link #cancel()}.
+ * An engine searches one position at a time, but may keep what it learnt for the next search</p>
+ * @author NkolasN
+ */
+public interface Engine {
+
+    /**
+     * Searches a position for the move of the player whose turn it is. The position is
+     * copied, so it can be a snapshot of a game which is changed while the search runs
+     * @param position the position to search
+     * @return the score, the move to play, the depth reached and the principal variation
+     * @throws CancellationException if the search is cancelled before it completes
+     */
+    SearchResult search(Position position);
+
+    /**
+     * Asks the search running on another thread to stop
+     */
+    void cancel();
+
+    /**
+     * Returns the amount of work of the last search
+     * @return the number of positions, or playouts, the last search went through
+     */
+    long getNodesVisited();
+}
@@ -0,0 +1,236 @@
+package gamelogic;
+
+import constants.Constants.GameState;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends completed games to segment files of a directory, a few bytes per game.
+ * <p>A segment is named {@code games-NNNNNN.log} and starts with a header of {@value #HEADER_BYTES}
+ * bytes: the magic number {@code TTTL}, the version of the format, the width, height and k of the
+ * board and the number of bits of a move. Every game follows as the number of its moves shifted
+ * left by two bits, or'ed with the ordinal of its outcome, as an unsigned varint, then its moves
+ * packed into just enough bits for a cell, least significant bit first. A game of the standard board
+ * takes at most 6 bytes</p>
+ * <p>Games are buffered and written with a {@link FileChannel}. A log never appends to an existing
+ * segment, whose last game may have been cut short by a crash, but starts the segment after the last
+ * one in the directory, and starts another one whenever a segment grows past its size limit. Any
+ * number of threads may append to the same log. See {@link GameLogReader} for reading the games
+ * back</p>
+ * @author NkolasN
+ */
+public class GameLog implements Closeable {
+
+    static final int MAGIC = 0x5454544C;
+    static final short VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final String PREFIX = "games-";
+    static final String SUFFIX = ".log";
+
+    /** The size a segment grows to before the next one is started */
+    public static final long DEFAULT_SEGMENT_BYTES = 64 << 20;
+
+    private final Path directory;
+    private final Rules rules;
+    private final int bits;
+    private final long segmentBytes;
+    private final ByteBuffer buffer;
+    private FileChannel channel;
+    private int segment;
+    private long segmentSize;
+    private long games;
+
+    /**
+     * Opens a log in a directory, creating it if needed
+     * @param directory the directory of the segment files
+     * @param rules the rules of the games appended
+     * @throws IOException if the first segment cannot be created
+     */
+    public GameLog(Path directory, Rules rules) throws IOException {
+        this(directory, rules, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * @param segmentBytes the size a segment grows to before the next one is started
+     */
+    GameLog(Path directory, Rules rules, long segmentBytes) throws IOException {
+        if (segmentBytes < HEADER_BYTES + maxRecordBytes(rules) || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid segment size, given " + segmentBytes);
+        }
+
+        this.directory = directory;
+        this.rules = rules;
+        this.bits = bitsPerMove(rules);
+        this.segmentBytes = segmentBytes;
+        this.buffer = ByteBuffer.allocate(Math.max(64 << 10, 2 * maxRecordBytes(rules))).order(ByteOrder.LITTLE_ENDIAN);
+
+        Files.createDirectories(directory);
+        segment = lastSegment(directory);
+        startSegment();
+    }
+
+    /**
+     * Appends a completed game
+     * @param state the state of the game, holding its moves and its outcome
+     * @throws IOException if the game cannot be written
+     */
+    public void append(State state) throws IOException {
+        int[] moves = state.getMoves();
+        append(moves, moves.length, state.getState());
+    }
+
+    /**
+     * Appends a game
+     * @param moves the cells played, in order
+     * @param count the number of moves
+     * @param outcome how the game ended
+     * @throws IOException if the game cannot be written
+     */
+    public synchronized void append(int[] moves, int count, GameState outcome) throws IOException {
+        if (count > rules.getCells()) {
+            throw new IllegalArgumentException("A game of " + rules + " has at most " + rules.getCells()
+                                               + " moves, given " + count);
+        }
+        if (channel == null) {
+            throw new IOException("The game log is closed");
+        }
+
+        int size = recordBytes(count);
+        if (segmentSize + size > segmentBytes) {
+            flush();
+            channel.close();
+            startSegment();
+        }
+        if (buffer.remaining() < size) {
+            flush();
+        }
+
+        long header = (long) count << 2 | outcome.ordinal();
+        while (header >= 0x80) {
+            buffer.put((byte) (header | 0x80));
+            header >>>= 7;
+        }
+        buffer.put((byte) header);
+
+        long pending = 0;
+        int pendingBits = 0;
+        for (int i = 0; i < count; i++) {
+            pending |= (long) moves[i] << pendingBits;
+            pendingBits += bits;
+            while (pendingBits >= 8) {
+                buffer.put((byte) pending);
+                pending >>>= 8;
+                pendingBits -= 8;
+            }
+        }
+        if (pendingBits > 0) {
+            buffer.put((byte) pending);
+        }
+
+        segmentSize += size;
+        games++;
+    }
+
+    /**
+     * Writes the games appended so far to the segment file
+     * @throws IOException if they cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @return the number of games appended since the log was opened
+     */
+    public synchronized long getGames() {
+        return games;
+    }
+
+    /**
+     * Writes the games appended so far and closes the segment file
+     * @throws IOException if they cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            try {
+                flush();
+                channel.force(false);
+            } finally {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    private void startSegment() throws IOException {
+        segment++;
+        channel = FileChannel.open(directory.resolve(String.format("%s%06d%s", PREFIX, segment, SUFFIX)),
+                                   StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+        buffer.putInt(MAGIC)
+              .putShort(VERSION)
+              .putShort((short) rules.getWidth())
+              .putShort((short) rules.getHeight())
+              .put((byte) rules.getK())
+              .put((byte) bits)
+              .putInt(0);
+        segmentSize = HEADER_BYTES;
+    }
+
+    private int recordBytes(int count) {
+        int varint = 1;
+        for (long header = (long) count << 2; header >= 0x80; header >>>= 7) {
+            varint++;
+        }
+        return varint + (count * bits + 7) / 8;
+    }
+
+    private static int maxRecordBytes(Rules rules) {
+        return 5 + (rules.getCells() * bitsPerMove(rules) + 7) / 8;
+    }
+
+    /**
+     * @return the number of bits needed to tell apart the cells of the board
+     */
+    static int bitsPerMove(Rules rules) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(rules.getCells() - 1));
+    }
+
+    /**
+     * @return the number of the last segment in the directory, 0 if there is none
+     */
+    private static int lastSegment(Path directory) throws IOException {
+        int last = 0;
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path path : segments) {
+                last = Math.max(last, segmentNumber(path));
+            }
+        }
+        return last;
+    }
+
+    /**
+     * @return the number in the name of a segment file, 0 if it is not one
+     */
+    static int segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return 0;
+        }
+    }
+}
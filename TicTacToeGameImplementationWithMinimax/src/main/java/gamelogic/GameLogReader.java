@@ -0,0 +1,186 @@
+package gamelogic;
+
+import constants.Constants;
+import constants.Constants.GameState;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static constants.Constants.Player.O;
+import static constants.Constants.Player.X;
+
+/**
+ * Reads back the games of a {@link GameLog}, one at a time.
+ * <p>Every segment is mapped into memory and its games decoded in place in the order they were
+ * appended, so reading a log takes memory for one game whatever its size. A game cut short at the end
+ * of a segment, as a crash while writing leaves it, or a move off the board ends the segment; a
+ * segment of another format fails the replay</p>
+ * @author NkolasN
+ */
+public class GameLogReader {
+
+    private static final GameState[] OUTCOMES = GameState.values();
+
+    /**
+     * Receives the games of a log
+     */
+    public interface GameVisitor {
+
+        /**
+         * @param rules the rules of the game
+         * @param moves the cells played, in order, in an array reused for the next game
+         * @param count the number of moves
+         * @param outcome how the game ended
+         */
+        void visit(Rules rules, int[] moves, int count, GameState outcome);
+    }
+
+    private final Path directory;
+
+    /**
+     * @param directory the directory of the segment files of the log
+     */
+    public GameLogReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Replays every game of the log on a state: the state is reset, the moves are played on it
+     * in turn, 'X' first, and it is ended with the outcome of the game before being given to the
+     * consumer. The same state is given for every game of a board size
+     * @param consumer receives the state at the end of every game
+     * @return the number of games replayed
+     * @throws IOException if a segment cannot be read
+     */
+    public long replay(Consumer<State> consumer) throws IOException {
+        State[] state = new State[1];
+
+        return replay((rules, moves, count, outcome) -> {
+            if (state[0] == null || !state[0].getRules().equals(rules)) {
+                state[0] = new State(rules);
+            }
+            State s = state[0];
+            s.reset();
+
+            Constants.Player player = X;
+            Coordinate last = null;
+            for (int i = 0; i < count; i++) {
+                last = s.getCoordinates().get(moves[i]);
+                s.update(last, player, player == X ? O : X);
+                player = player == X ? O : X;
+            }
+            if (last != null) {
+                s.gameEnded(last, player == X ? O : X);
+            }
+            s.setEnded(outcome);
+
+            consumer.accept(s);
+        });
+    }
+
+    /**
+     * Reads every game of the log, without building a state for it
+     * @param visitor receives the moves and the outcome of every game
+     * @return the number of games read
+     * @throws IOException if a segment cannot be read
+     */
+    public long replay(GameVisitor visitor) throws IOException {
+        long games = 0;
+        for (Path segment : segments()) {
+            games += replaySegment(segment, visitor);
+        }
+        return games;
+    }
+
+    /**
+     * @return the segment files of the log in the order they were written
+     */
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, GameLog.PREFIX + "*" + GameLog.SUFFIX)) {
+            for (Path path : paths) {
+                if (GameLog.segmentNumber(path) > 0) {
+                    segments.add(path);
+                }
+            }
+        }
+        segments.sort(Comparator.comparingInt(GameLog::segmentNumber));
+        return segments;
+    }
+
+    private long replaySegment(Path segment, GameVisitor visitor) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            if (channel.size() < GameLog.HEADER_BYTES) {
+                return 0;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.getInt(0) != GameLog.MAGIC || buffer.getShort(4) != GameLog.VERSION) {
+            throw new IOException("Not a game log segment of version " + GameLog.VERSION + ": " + segment);
+        }
+        Rules rules = new Rules(buffer.getShort(6) & 0xFFFF, buffer.getShort(8) & 0xFFFF, buffer.get(10));
+        int bits = buffer.get(11);
+        if (bits != GameLog.bitsPerMove(rules)) {
+            throw new IOException("Invalid number of bits per move in " + segment);
+        }
+
+        int[] moves = new int[rules.getCells()];
+        int mask = (1 << bits) - 1;
+        int limit = buffer.limit();
+        int offset = GameLog.HEADER_BYTES;
+        long games = 0;
+
+        while (offset < limit) {
+            long header = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (offset == limit || shift > 28) {
+                    return games;
+                }
+                b = buffer.get(offset++);
+                header |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            int count = (int) (header >>> 2);
+            int end = offset + (count * bits + 7) / 8;
+            if (count > moves.length || end > limit) {
+                return games;
+            }
+
+            long pending = 0;
+            int pendingBits = 0;
+            for (int i = 0; i < count; i++) {
+                while (pendingBits < bits) {
+                    pending |= (long) (buffer.get(offset++) & 0xFF) << pendingBits;
+                    pendingBits += 8;
+                }
+                moves[i] = (int) pending & mask;
+                pending >>>= bits;
+                pendingBits -= bits;
+                if (moves[i] >= moves.length) {
+                    return games;
+                }
+            }
+            offset = end;
+
+            visitor.visit(rules, moves, count, OUTCOMES[(int) header & 3]);
+            games++;
+        }
+        return games;
+    }
+}
@@ -0,0 +1,92 @@
+package gamelogic;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Counts durations in buckets which grow with the duration, 16 buckets for every power of two,
+ * so that any number of them is kept in a fixed amount of memory within about 6% of their value.
+ * <p>Durations can be recorded by any number of threads at once</p>
+ * @author NkolasN
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 16;
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a duration
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucketOf(nanos));
+        max.accumulate(nanos);
+    }
+
+    /**
+     * Adds the durations recorded by another histogram to this one
+     * @param other the histogram whose durations are added
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.addAndGet(i, other.counts.get(i));
+        }
+        max.accumulate(other.max());
+    }
+
+    /**
+     * @return the number of durations recorded
+     */
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return the longest duration recorded, in nanoseconds
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns the smallest duration which at least the given share of the durations do not exceed,
+     * rounded up to the end of its bucket
+     * @param percentile the share of the durations, from 0 to 100
+     * @return the duration in nanoseconds, 0 if none has been recorded
+     */
+    public long percentile(double percentile) {
+        long rank = (long) Math.ceil(count() * percentile / 100);
+        long seen = 0;
+
+        for (int bucket = 0; bucket < counts.length(); bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank && seen > 0) {
+                return Math.min(upperBoundOf(bucket), max());
+            }
+        }
+        return 0;
+    }
+
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) Math.max(nanos, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        return (exponent - 3) * SUB_BUCKETS + (int) (nanos >>> (exponent - 4) & (SUB_BUCKETS - 1));
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + 3;
+        long base = 1L << exponent;
+        return base + ((long) (bucket % SUB_BUCKETS + 1) << (exponent - 4)) - 1;
+    }
+}
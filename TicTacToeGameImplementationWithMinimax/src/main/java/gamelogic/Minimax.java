@@ -1,262 +1,984 @@
-package gamelogic;
-
-import constants.Constants;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-
-import static constants.Constants.Player.O;
-import static constants.Constants.Player.X;
-
-/**
- * This class implements a minimax player for a tic-tac toe game
- * <p>It returns a move based on the game state</p>
- * @author NkolasN
- */
-public class Minimax {
-
-    private State state;
-
-
-    public Minimax(State state) {
-
-        this.state = state;
-    }
-
-
-    /**
-     * The implementation of the minimax AI.
-     * <p> The AI player attempts to choose a move which minimises the other player's max score
-     * by assigning a numerical value to each possible future state of the game</p>
-     * <p>The numerical value of the score is determined by a heuristic evaluation function returning the
-     * highest score if the minimising player (the AI) is going to win or if it is to
-     * lose if a specific move is not played</p>
-     * @param depthOfSearch the depth of the search
-     * @param player whose turn it is
-     * @return a coordinate representing the move of the AI player
-     */
-    public List<Object> minimax(int depthOfSearch, Constants.Player player) {
-
-        List<Coordinate> possibleMoves = getMoves();
-        int maxScore = (player == O) ? -999999999 : 999999999;
-        int currentScore;
-        Coordinate bestMove = new Coordinate(0,0);
-
-
-        if (possibleMoves.isEmpty() || depthOfSearch == 0) {
-            maxScore = calculateScore();
-
-        } else {
-
-            for (Coordinate c : possibleMoves) {
-
-                for(Coordinate c2 : state.getCoordinates()){
-                    if(c.equals(c2)){
-                        c2.setMarked(player);
-                        break;
-                    }
-                }
-
-                if (player == O) {
-                    currentScore = (int) minimax(depthOfSearch - 1, X).get(0);
-                    if (currentScore > maxScore) {
-                        maxScore = currentScore;
-                        bestMove = c;
-                    }
-                } else {
-                    currentScore = (int) minimax(depthOfSearch - 1, O).get(0);
-                    if (currentScore < maxScore) {
-                        maxScore = currentScore;
-                        bestMove = c;
-                    }
-                }
-
-                for(Coordinate c2 : state.getCoordinates()){
-                    if(c.equals(c2)){
-                        c2.setUnmarked();
-                        break;
-                    }
-                }
-            }
-        }
-
-        List<Object> ar = new ArrayList();
-        ar.add(new Integer(maxScore));
-        ar.add(bestMove);
-
-
-        return ar;
-    }
-
-
-    /**
-     * Calculates the total score, given a game state.
-     * <p> The method first creates lists representing the rows,
-     * columns and diagonals and then returns a total score out
-     * of individual scores calculated from every line</p>
-     * @return the total score
-     */
-    private int calculateScore() {
-
-         /* Create three lists representing the  rows */
-
-        List<Coordinate> lineRow0 = new ArrayList<>();
-        lineRow0.addAll(IntStream.range(0,3)
-                        .mapToObj(i->state.getCoordinates().get(i))
-                        .collect(Collectors.toList())
-        );
-
-        List<Coordinate> lineRow1 = new ArrayList<>();
-        lineRow1.addAll(IntStream.range(3,6)
-                        .mapToObj(i->state.getCoordinates().get(i))
-                        .collect(Collectors.toList())
-        );
-
-
-        List<Coordinate> lineRow2 = new ArrayList<>();
-        lineRow2.addAll(IntStream.range(6,9)
-                        .mapToObj(i->state.getCoordinates().get(i))
-                        .collect(Collectors.toList())
-        );
-
-        /* Create three lists representing the  columns */
-
-        List<Coordinate> lineColumn0 = new ArrayList<>();
-        lineColumn0.addAll(IntStream.iterate(0,i->i+3).limit(3)
-                           .mapToObj(i->state.getCoordinates().get(i))
-                           .collect(Collectors.toList())
-        );
-
-        List<Coordinate> lineColumn1 = new ArrayList<>();
-        lineColumn1.addAll(IntStream.iterate(1,i->i+3).limit(3)
-                           .mapToObj(i->state.getCoordinates().get(i))
-                           .collect(Collectors.toList())
-        );
-
-        List<Coordinate> lineColumn2 = new ArrayList<>();
-        lineColumn2.addAll(IntStream.iterate(2,i->i+3).limit(3)
-                           .mapToObj(i->state.getCoordinates().get(i))
-                           .collect(Collectors.toList())
-        );
-
-
-        /* Create two lists representing the diagonals */
-
-        List<Coordinate> diag0 = new ArrayList<>();
-
-        diag0.addAll(IntStream.iterate(0,i->i+4).limit(3)
-                     .mapToObj(i->state.getCoordinates().get(i))
-                     .collect(Collectors.toList())
-        );
-
-        List<Coordinate> diag1 = new ArrayList<>();
-        diag1.addAll(IntStream.iterate(2,i->i+2).limit(3)
-                     .mapToObj(i->state.getCoordinates().get(i))
-                     .collect(Collectors.toList())
-        );
-
-
-        int score;
-
-        score  = getSequenceScore(lineRow0)
-               + getSequenceScore(lineRow1)
-               + getSequenceScore(lineRow2)
-               + getSequenceScore(lineColumn0)
-               + getSequenceScore(lineColumn1)
-               + getSequenceScore(lineColumn2)
-               + getSequenceScore(diag0)
-               + getSequenceScore(diag1);
-
-        return score;
-    }
-
-    /**
-     * Given a sequence of cells, this method returns a numerical score
-     * @param c the sequence of cells
-     * @return a score drawn from the contents of the sequence
-     *         the score is the highest if a player is to win if a winning move is played
-     *         or if the player loses if a move is not played
-     */
-    private int getSequenceScore(List<Coordinate> c) {
-        int score = 0;
-
-        score = c.get(0).markedWith("O") ? 1 : -1;
-
-
-        if (c.get(1).markedWith("O")) {
-            if (score == 1) {
-                score += 10;
-            } else if (score == -1) {
-                return 0;
-            } else {
-                score = 1;
-            }
-        } else if (c.get(1).markedWith("X")) {
-            if (score == -1) {
-                score -= 10;
-            } else if (score == 1) {
-                return 0;
-            } else {
-                score = -1;
-            }
-        }
-
-
-        if (c.get(2).markedWith("O")) {
-            if (score > 0) {
-                score += 100;
-            } else if (score < 0) {
-                return 0;
-            } else {
-                score = 1;
-            }
-        } else if (c.get(2).markedWith("X")) {
-            if (score < 0) {
-                score *= 100;
-            } else if (score > 1) {
-                return 0;
-            } else {
-                score = -1;
-            }
-        }
-        return score;
-    }
-
-    /**
-     * Returns all the possible moves
-     * @return an empty list if the game is over,
-     *         a list of non played game board cells otherwise
-     */
-    private List<Coordinate> getMoves() {
-
-        List<Coordinate> moves = new ArrayList<>();
-
-        if(state.getCoordinates().get(0).markedWith("X") && state.getCoordinates().get(1).markedWith("X") && state.getCoordinates().get(2).markedWith("X") ||
-           state.getCoordinates().get(0).markedWith("O") && state.getCoordinates().get(1).markedWith("O") && state.getCoordinates().get(2).markedWith("O") ||
-           state.getCoordinates().get(3).markedWith("X") && state.getCoordinates().get(4).markedWith("X") && state.getCoordinates().get(5).markedWith("X") ||
-           state.getCoordinates().get(3).markedWith("O") && state.getCoordinates().get(4).markedWith("O") && state.getCoordinates().get(5).markedWith("O") ||
-           state.getCoordinates().get(6).markedWith("X") && state.getCoordinates().get(7).markedWith("X") && state.getCoordinates().get(8).markedWith("X") ||
-           state.getCoordinates().get(6).markedWith("O") && state.getCoordinates().get(7).markedWith("O") && state.getCoordinates().get(8).markedWith("O") ||
-           state.getCoordinates().get(0).markedWith("X") && state.getCoordinates().get(3).markedWith("X") && state.getCoordinates().get(6).markedWith("X") ||
-           state.getCoordinates().get(0).markedWith("O") && state.getCoordinates().get(3).markedWith("O") && state.getCoordinates().get(6).markedWith("O") ||
-           state.getCoordinates().get(1).markedWith("X") && state.getCoordinates().get(4).markedWith("X") && state.getCoordinates().get(7).markedWith("X") ||
-           state.getCoordinates().get(1).markedWith("O") && state.getCoordinates().get(4).markedWith("O") && state.getCoordinates().get(7).markedWith("O") ||
-           state.getCoordinates().get(2).markedWith("X") && state.getCoordinates().get(5).markedWith("X") && state.getCoordinates().get(8).markedWith("X") ||
-           state.getCoordinates().get(2).markedWith("O") && state.getCoordinates().get(5).markedWith("O") && state.getCoordinates().get(8).markedWith("O") ||
-           state.getCoordinates().get(0).markedWith("X") && state.getCoordinates().get(4).markedWith("X") && state.getCoordinates().get(8).markedWith("X") ||
-           state.getCoordinates().get(0).markedWith("O") && state.getCoordinates().get(4).markedWith("O") && state.getCoordinates().get(8).markedWith("O") ||
-           state.getCoordinates().get(2).markedWith("X") && state.getCoordinates().get(4).markedWith("X") && state.getCoordinates().get(6).markedWith("X") ||
-           state.getCoordinates().get(2).markedWith("O") && state.getCoordinates().get(4).markedWith("O") && state.getCoordinates().get(6).markedWith("O")){
-
-            return moves;
-        }
-
-
-        moves.addAll(state.getCoordinates().stream().filter(c -> !c.isMarked()).collect(Collectors.toList()));
-
-        return moves;
-    }
-
-
-}
+package gamelogic;
+
+import constants.Constants;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import static constants.Constants.Player.O;
+import static constants.Constants.Player.X;
+import static gamelogic.TranspositionTable.*;
+
+/**
+ * This class implements a minimax player for a tic-tac toe game, or any m,n,k game
+ * <p>It returns a move based on the game state. The search runs on a {@link Position}
+ * built from the state, so the state itself is never modified while searching</p>
+ * @author NkolasN
+ */
+public class Minimax implements Engine {
+
+    private static final int INFINITY = 999999999;
+    static final int[] SEQUENCE_SCORES = {0, 1, 11, 111, 1111, 11111, 111111};
+
+    private State state;
+    private Position position;
+    private Constants.SearchMode searchMode;
+    private int depth = -1;
+    private int[] sequenceScores = SEQUENCE_SCORES;
+    private TranspositionTable table;
+    private int[][] moveLists;
+    private int[][] principalVariations;
+    private int[] principalVariationLengths;
+    private long nodesVisited;
+    private long leafEvaluations;
+    private long cutoffs;
+    private long tableHits;
+    private long tableMisses;
+    private long solutionTableHits;
+    private volatile boolean cancelled;
+    private long nodeLimit;
+    private final Minimax owner;
+    private ForkJoinPool pool;
+    private ThreadLocal<Minimax> workers;
+    private Constants.ParallelMode parallelMode = Constants.ParallelMode.ROOT_SPLIT;
+    private int helper;
+    private volatile boolean helpersDone;
+    private final LongAdder helperNodes = new LongAdder();
+
+
+    public Minimax(State state) {
+
+        this(state, Constants.SEARCH_MODE);
+    }
+
+
+    public Minimax(State state, Constants.SearchMode searchMode) {
+
+        this(state, searchMode, searchMode == Constants.SearchMode.TRANSPOSITION || searchMode == Constants.SearchMode.SOLUTION_TABLE ?
+                new TranspositionTable(Constants.TRANSPOSITION_TABLE_SIZE) : null);
+    }
+
+
+    /**
+     * Creates a search sharing a transposition table with other searches, which may run at the same
+     * time since the table needs no locking. Search modes without a table ignore it
+     * @param state the state of the game
+     * @param table the table of the positions of the game
+     */
+    public Minimax(State state, TranspositionTable table) {
+
+        this(state, Constants.SEARCH_MODE, Constants.SEARCH_MODE == Constants.SearchMode.TRANSPOSITION ||
+                Constants.SEARCH_MODE == Constants.SearchMode.SOLUTION_TABLE ? table : null);
+    }
+
+
+    private Minimax(State state, Constants.SearchMode searchMode, TranspositionTable table) {
+
+        this.state = state;
+        this.searchMode = searchMode;
+        this.owner = this;
+        this.table = table;
+    }
+
+
+    /**
+     * Creates a worker searching on behalf of a parallel search. The worker shares the
+     * transposition table of its owner, so that clearing or loading the table of the owner
+     * applies to the workers too, and stops when its owner is cancelled
+     * @param owner the search the worker belongs to
+     */
+    private Minimax(Minimax owner) {
+
+        this.state = owner.state;
+        this.searchMode = owner.searchMode;
+        this.owner = owner;
+
+        this.table = owner.table;
+    }
+
+
+    /**
+     * Sets the number of threads searching the root moves, see {@link #setParallelism(int, Constants.ParallelMode)}
+     * @param parallelism the number of threads, 1 for a sequential search
+     */
+    public void setParallelism(int parallelism) {
+
+        setParallelism(parallelism, Constants.ParallelMode.ROOT_SPLIT);
+    }
+
+
+    /**
+     * Sets the number of threads of the search and how the work is spread between them.
+     * <p>With {@link Constants.ParallelMode#ROOT_SPLIT} and more than one thread the first root move is
+     * searched on the calling thread, then every other distinct root move is searched on its own copy of
+     * the position in a {@link ForkJoinPool}, all the threads sharing the transposition table of the
+     * search. These moves are only searched against the score of the first move rather than of the best
+     * earlier move, so the search visits more nodes in total, but the score of every move beating the
+     * first one is exact and the move picked is the one the sequential search would pick</p>
+     * <p>With {@link Constants.ParallelMode#LAZY_SMP} the calling thread runs the sequential search
+     * while helper threads search the whole position to the same depth, each trying the moves in a
+     * different order, and all of them share one transposition table. The helpers never report a
+     * result: they only fill the table with the exact scores and bounds of positions the calling thread
+     * is about to reach, so the calling thread returns the same score and move as the sequential
+     * search, only sooner. Searches without a transposition table have nothing to share, so their root
+     * moves are split instead</p>
+     * @param parallelism the number of threads, 1 for a sequential search
+     * @param mode how the work is spread between the threads
+     */
+    public void setParallelism(int parallelism, Constants.ParallelMode mode) {
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, given " + parallelism);
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+
+        parallelMode = table != null ? mode : Constants.ParallelMode.ROOT_SPLIT;
+
+        if (parallelism == 1) {
+            pool = null;
+            workers = null;
+        } else {
+            pool = new ForkJoinPool(parallelMode == Constants.ParallelMode.LAZY_SMP ? parallelism - 1 : parallelism);
+            workers = ThreadLocal.withInitial(() -> new Minimax(this));
+        }
+    }
+
+
+    /**
+     * Sets the depth of the searches run through {@link #search(Position)}
+     * @param depth the depth of the search, -1 for the depth the game is played at, see {@link #depthFor(Rules)}
+     */
+    public void setDepth(int depth) {
+
+        if (depth < -1) {
+            throw new IllegalArgumentException("Invalid depth " + depth);
+        }
+        this.depth = depth;
+    }
+
+
+    /**
+     * Changes how lines are scored at the leaves of the search, by default 1, 11, 111... see
+     * {@link #getSequenceScore(int, int)}. Positions answered from the {@link SolutionTable} or a
+     * {@link Tablebase} are still scored as there. The transposition table is cleared, as the scores
+     * it holds were reached with the former ones
+     * <p>The scores must be positive and increase with the number of marks, and a position whose
+     * every line held k marks of one player must still score less than {@link Tablebase#WIN_SCORE},
+     * so that no heuristic score is ever taken for a won game or overflows the search window</p>
+     * @param scores the score of a line holding 1, 2... up to k marks of one player and none of the
+     *               other, for that player
+     * @throws IllegalArgumentException if there are not k scores, or they break the rules above
+     */
+    public void setSequenceScores(int... scores) {
+
+        Rules rules = state.getRules();
+        int k = rules.getK();
+        if (scores.length != k) {
+            throw new IllegalArgumentException("Lines of " + rules + " need " + k + " scores, given " + scores.length);
+        }
+        for (int i = 0; i < k; i++) {
+            if (scores[i] <= (i == 0 ? 0 : scores[i - 1])) {
+                throw new IllegalArgumentException("Line scores must be positive and increasing, given "
+                                                   + Arrays.toString(scores));
+            }
+        }
+        int lines = rules.getLines().length;
+        if ((long) lines * scores[k - 1] >= Tablebase.WIN_SCORE) {
+            throw new IllegalArgumentException("Line scores of " + rules + " must stay under " + Tablebase.WIN_SCORE / lines
+                                               + " for its " + lines + " lines to score less than a win, given "
+                                               + Arrays.toString(scores));
+        }
+        sequenceScores = new int[k + 1];
+        System.arraycopy(scores, 0, sequenceScores, 1, k);
+        clearTable();
+    }
+
+
+    /**
+     * Returns the depth the AI searches to in a game: the whole game on the standard board,
+     * a few moves ahead on larger boards
+     * @param rules the rules of the game
+     * @return the depth of the search
+     */
+    public static int depthFor(Rules rules) {
+
+        return rules.getCells() <= Rules.STANDARD.getCells() ? Constants.MINIMAX_DEPTH : Constants.LARGE_BOARD_MINIMAX_DEPTH;
+    }
+
+
+    /**
+     * Searches a position to the depth set with {@link #setDepth(int)}, see {@link #minimax(Position, int)}
+     */
+    @Override
+    public SearchResult search(Position position) {
+
+        return minimax(position, depth >= 0 ? depth : depthFor(position.getRules()));
+    }
+
+
+    /**
+     * The implementation of the minimax AI.
+     * <p> The AI player attempts to choose a move which minimises the other player's max score
+     * by assigning a numerical value to each possible future state of the game</p>
+     * <p>The numerical value of the score is determined by a heuristic evaluation function returning the
+     * highest score if the minimising player (the AI) is going to win or if it is to
+     * lose if a specific move is not played</p>
+     * <p>With {@link Constants.SearchMode#ALPHA_BETA} lines which cannot change the outcome are pruned.
+     * Moves are tried in the same order and a move only replaces the best one if it scores strictly
+     * better, so both modes return the same move and score</p>
+     * <p>With {@link Constants.SearchMode#TRANSPOSITION} the results are also cached in a transposition
+     * table keyed by the canonical form of each position, and kept between searches of the same
+     * instance. Root moves leading to a rotation or reflection of an earlier root move are skipped, as
+     * they score the same</p>
+     * <p>With {@link Constants.SearchMode#SOLUTION_TABLE} a search deep enough to reach the end of the game
+     * is answered from the {@link SolutionTable}, which holds the result of the full search for every board.
+     * A game with a {@link Tablebase} is answered from it whatever the depth, as it holds perfect play: the
+     * score is then {@link Tablebase#WIN_SCORE} less the number of plies to the end of the game, positive
+     * if 'O' wins, or 0 for a draw</p>
+     * <p>The recursive search allocates nothing: it works on arrays kept between searches, and the
+     * result is only built once the search is over. Its counters are added to the {@link SearchStatistics}
+     * when it ends</p>
+     * @param depthOfSearch the depth of the search
+     * @param player whose turn it is
+     * @return the score, the move of the AI player, the depth reached and the principal variation
+     * @throws CancellationException if the search is cancelled before it completes
+     */
+    public SearchResult minimax(int depthOfSearch, Constants.Player player) {
+
+        return minimax(Position.of(state, player), depthOfSearch);
+    }
+
+
+    /**
+     * Searches a position for the move of the player whose turn it is, see {@link #minimax(int, Constants.Player)}.
+     * <p>The position is copied, so it can be a snapshot of a game which is changed while the
+     * search runs on another thread</p>
+     * @param root the position to search
+     * @param depthOfSearch the depth of the search
+     * @return the score, the move of the player to move, the depth reached and the principal variation
+     * @throws CancellationException if the search is cancelled before it completes
+     */
+    public SearchResult minimax(Position root, int depthOfSearch) {
+
+        long start = System.nanoTime();
+        position = root.copy(sequenceScores);
+        cancelled = false;
+        helpersDone = false;
+        resetCounters();
+        helperNodes.reset();
+
+        try {
+            SearchResult result = searchRoot(depthOfSearch);
+            SearchStatistics.getInstance().recordMove(System.nanoTime() - start, result.getDepth());
+            return result;
+        } finally {
+            publishCounters();
+            nodesVisited += helperNodes.sum();
+        }
+    }
+
+
+    /**
+     * Searches the root position, see {@link #minimax(Position, int)}
+     * @param depthOfSearch the depth of the search
+     * @return the result of the search
+     */
+    private SearchResult searchRoot(int depthOfSearch) {
+
+        Constants.Player player = position.getTurn();
+        Rules rules = position.getRules();
+
+        if (searchMode == Constants.SearchMode.SOLUTION_TABLE && rules.equals(Rules.STANDARD) &&
+                depthOfSearch >= position.emptyCount()) {
+            short entry = SolutionTable.getInstance().lookup(position);
+
+            if (entry != SolutionTable.INVALID) {
+                solutionTableHits++;
+                return solutionResult(entry);
+            }
+        }
+
+        if (searchMode == Constants.SearchMode.SOLUTION_TABLE) {
+            Tablebase tablebase = Tablebase.forRules(rules);
+
+            if (tablebase != null && tablebase.probe(position) != Tablebase.UNSOLVED) {
+                solutionTableHits++;
+                return tablebaseResult(tablebase);
+            }
+        }
+
+        nodesVisited = 1;
+        int sign = (player == O) ? 1 : -1;
+        int plies = Math.min(depthOfSearch, position.emptyCount()) + 1;
+        long best = SearchResult.pack(-INFINITY, -1);
+        int currentScore;
+
+        ensureMoveLists(plies);
+        principalVariationLengths[0] = 0;
+
+        if (position.isGameOver() || depthOfSearch == 0) {
+            leafEvaluations++;
+            best = SearchResult.pack(sign * calculateScore(position), -1);
+
+        } else {
+
+            int[] moves = moveLists[0];
+            int count = generateMoves(position, moves);
+            long[] seen = new long[count];
+            int distinctMoves = 0;
+
+            for (int i = 0; i < count; i++) {
+                int cell = moves[i];
+
+                if (table != null) {
+                    position.make(cell);
+                    long key = position.canonicalHash();
+                    position.unmake(cell);
+                    if (contains(seen, distinctMoves, key)) {
+                        continue;
+                    }
+                    seen[distinctMoves] = key;
+                }
+                moves[distinctMoves++] = cell;
+            }
+
+            List<ForkJoinTask<?>> helpers = startHelpers(depthOfSearch, plies);
+
+            try {
+                for (int i = 0; i < distinctMoves; i++) {
+                    int cell = moves[i];
+
+                    if (pool != null && parallelMode == Constants.ParallelMode.ROOT_SPLIT && i == 1) {
+                        int[][] lines = searchInParallel(moves, i, distinctMoves, depthOfSearch, plies,
+                                                         -SearchResult.scoreOf(best));
+                        for (int j = 0; j < lines.length; j++) {
+                            if (lines[j][0] > SearchResult.scoreOf(best)) {
+                                best = SearchResult.pack(lines[j][0], moves[i + j]);
+                                principalVariations[0][0] = moves[i + j];
+                                System.arraycopy(lines[j], 1, principalVariations[0], 1, lines[j].length - 1);
+                                principalVariationLengths[0] = lines[j].length;
+                            }
+                        }
+                        break;
+                    }
+
+                    position.make(cell);
+                    currentScore = searchMove(depthOfSearch, -SearchResult.scoreOf(best));
+                    position.unmake(cell);
+
+                    if (currentScore > SearchResult.scoreOf(best)) {
+                        best = SearchResult.pack(currentScore, cell);
+                        updatePrincipalVariation(0, cell);
+                    }
+                }
+            } finally {
+                stopHelpers(helpers);
+            }
+
+            extendPrincipalVariation(plies - 1);
+        }
+
+        return new SearchResult(rules, SearchResult.pack(sign * SearchResult.scoreOf(best), SearchResult.moveOf(best)),
+                                plies - 1, principalVariations[0], principalVariationLengths[0]);
+    }
+
+
+    /**
+     * Builds the result of a search answered by the {@link SolutionTable}, following the moves
+     * of the table to the end of the game for the principal variation
+     * @param entry the entry of the root position
+     * @return the result of the full search of the root position
+     */
+    private SearchResult solutionResult(short entry) {
+
+        SolutionTable solution = SolutionTable.getInstance();
+        int[] line = new int[position.emptyCount()];
+        int length = 0;
+        int code = (int) position.code();
+        Constants.Player player = position.getTurn();
+
+        for (short next = entry; SolutionTable.moveOf(next) >= 0; next = solution.entry(code)) {
+            int cell = SolutionTable.moveOf(next);
+            line[length++] = cell;
+            code = SolutionTable.play(code, cell, player);
+            player = player == O ? X : O;
+        }
+
+        return new SearchResult(position.getRules(), SearchResult.pack(SolutionTable.scoreOf(entry), SolutionTable.moveOf(entry)),
+                                line.length, line, length);
+    }
+
+
+    /**
+     * Builds the result of a search answered by a {@link Tablebase}, following the moves
+     * of the tablebase to the end of the game for the principal variation
+     * @param tablebase the tablebase of the game
+     * @return the result of the full search of the root position
+     */
+    private SearchResult tablebaseResult(Tablebase tablebase) {
+
+        short entry = tablebase.probe(position);
+        int sign = position.getTurn() == O ? 1 : -1;
+        int[] line = new int[position.emptyCount()];
+        int length = 0;
+
+        for (short next = entry; Tablebase.moveOf(next) >= 0; next = tablebase.probe(position)) {
+            line[length++] = Tablebase.moveOf(next);
+            position.make(Tablebase.moveOf(next));
+        }
+        for (int i = length - 1; i >= 0; i--) {
+            position.unmake(line[i]);
+        }
+
+        return new SearchResult(position.getRules(), SearchResult.pack(sign * Tablebase.scoreOf(entry), Tablebase.moveOf(entry)),
+                                line.length, line, length);
+    }
+
+
+    /**
+     * Searches the position reached by a root move
+     * @param depthOfSearch the depth of the search from the root
+     * @param beta the score of the root move which the opponent can hold the player to move under
+     * @return the score of the root move for the player who played it
+     */
+    private int searchMove(int depthOfSearch, int beta) {
+
+        if (searchMode != Constants.SearchMode.MINIMAX) {
+            return -alphaBeta(depthOfSearch - 1, 1, -INFINITY, beta);
+        }
+        return position.getTurn() == O ? -search(depthOfSearch - 1, 1) : search(depthOfSearch - 1, 1);
+    }
+
+
+    /**
+     * Searches root moves on their own copy of the position in the pool, all of them against the
+     * score of the first root move, which has been searched already
+     * @param moves the root moves
+     * @param from the index of the first move to search
+     * @param to the index after the last move to search
+     * @param depthOfSearch the depth of the search from the root
+     * @param plies the number of plies of the search
+     * @param beta the opposite of the score of the first root move
+     * @return for every move searched, its score, exact if it beats the first root move, followed
+     *         by the principal variation after it
+     */
+    private int[][] searchInParallel(int[] moves, int from, int to, int depthOfSearch, int plies, int beta) {
+
+        Position root = position;
+        List<ForkJoinTask<int[]>> tasks = new ArrayList<>();
+
+        for (int i = from; i < to; i++) {
+            int cell = moves[i];
+            tasks.add(pool.submit(() -> {
+                Minimax worker = workers.get();
+                worker.position = root.copy();
+                worker.position.make(cell);
+                worker.resetCounters();
+                worker.ensureMoveLists(plies);
+                try {
+                    int score = worker.searchMove(depthOfSearch, beta);
+                    int length = worker.principalVariationLengths[1];
+                    int[] line = new int[length + 1];
+                    line[0] = score;
+                    System.arraycopy(worker.principalVariations[1], 0, line, 1, length);
+                    return line;
+                } finally {
+                    helperNodes.add(worker.nodesVisited);
+                    worker.publishCounters();
+                }
+            }));
+        }
+
+        int[][] lines = new int[tasks.size()][];
+        try {
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = tasks.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Search interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (tasks.stream().anyMatch(t -> !t.isDone())) {
+                cancelled = true;
+                tasks.forEach(t -> t.cancel(false));
+            }
+        }
+
+        return lines;
+    }
+
+
+    /**
+     * Starts the helper threads of a lazy SMP search, each searching the whole root position
+     * in its own move order until the calling thread is done
+     * @param depthOfSearch the depth of the search from the root
+     * @param plies the number of plies of the search
+     * @return the tasks running the helpers, none unless the search is a lazy SMP search
+     */
+    private List<ForkJoinTask<?>> startHelpers(int depthOfSearch, int plies) {
+
+        if (pool == null || parallelMode != Constants.ParallelMode.LAZY_SMP) {
+            return Collections.emptyList();
+        }
+
+        List<ForkJoinTask<?>> helpers = new ArrayList<>();
+        Position root = position.copy();
+        for (int h = 1; h <= pool.getParallelism(); h++) {
+            int order = h;
+            helpers.add(pool.submit(() -> {
+                Minimax worker = workers.get();
+                worker.position = root.copy();
+                worker.helper = order;
+                worker.resetCounters();
+                worker.ensureMoveLists(plies);
+                try {
+                    worker.alphaBeta(depthOfSearch, 0, -INFINITY, INFINITY);
+                } catch (CancellationException e) {
+                    // the calling thread is done, the rest of the helper's search is not needed
+                } finally {
+                    helperNodes.add(worker.nodesVisited);
+                    worker.publishCounters();
+                }
+            }));
+        }
+
+        return helpers;
+    }
+
+
+    /**
+     * Stops the helper threads of a lazy SMP search and waits for them, so that none
+     * of them is still writing to the table when the next search starts
+     * @param helpers the tasks running the helpers
+     */
+    private void stopHelpers(List<ForkJoinTask<?>> helpers) {
+
+        helpersDone = true;
+        for (ForkJoinTask<?> helper : helpers) {
+            helper.quietlyJoin();
+        }
+    }
+
+
+    /**
+     * Makes sure there is an array of moves and an array for the principal variation
+     * for every ply of the search
+     * @param plies the number of plies of the search
+     */
+    private void ensureMoveLists(int plies) {
+        int cells = position.getRules().getCells();
+
+        if (moveLists == null || moveLists.length < plies || moveLists[0].length != cells) {
+            moveLists = new int[plies][cells];
+            principalVariations = new int[plies][plies];
+            principalVariationLengths = new int[plies];
+        }
+    }
+
+
+    /**
+     * Makes a move, followed by the principal variation found after it one ply further,
+     * the principal variation of a ply
+     * @param ply the distance from the root of the search
+     * @param cell the best move found at the ply
+     */
+    private void updatePrincipalVariation(int ply, int cell) {
+        int length = principalVariationLengths[ply + 1];
+
+        principalVariations[ply][0] = cell;
+        System.arraycopy(principalVariations[ply + 1], 0, principalVariations[ply], 1, length);
+        principalVariationLengths[ply] = length + 1;
+    }
+
+
+    /**
+     * Follows the best moves stored in the transposition table from the end of the principal
+     * variation of the root, where it was cut short by results taken from the table
+     * @param depth the depth of the search
+     */
+    private void extendPrincipalVariation(int depth) {
+        int[] line = principalVariations[0];
+        int length = principalVariationLengths[0];
+
+        for (int i = 0; i < length; i++) {
+            position.make(line[i]);
+        }
+
+        while (table != null && length < depth && !position.isGameOver()) {
+            int symmetry = position.canonicalSymmetry();
+            long entry = table.probe(position.hash(symmetry));
+            if (entry == MISS || moveOf(entry) < 0) {
+                break;
+            }
+
+            int cell = position.getRules().invert(symmetry, moveOf(entry));
+            if (position.isMarkedBy(cell, X) || position.isMarkedBy(cell, O)) {
+                break;
+            }
+            position.make(cell);
+            line[length++] = cell;
+        }
+
+        for (int i = length - 1; i >= 0; i--) {
+            position.unmake(line[i]);
+        }
+        principalVariationLengths[0] = length;
+    }
+
+
+    /**
+     * Sets the counters of this search, or of the part of a parallel search run by a worker, to zero
+     */
+    private void resetCounters() {
+        nodesVisited = 0;
+        leafEvaluations = 0;
+        cutoffs = 0;
+        tableHits = 0;
+        tableMisses = 0;
+        solutionTableHits = 0;
+    }
+
+
+    /**
+     * Adds the counters of this search, or of the part of a parallel search run by a worker,
+     * to the {@link SearchStatistics}
+     */
+    private void publishCounters() {
+        SearchStatistics.getInstance().addCounters(nodesVisited, leafEvaluations, cutoffs,
+                                                   tableHits, tableMisses, solutionTableHits);
+    }
+
+
+    /**
+     * Asks the search running on another thread to stop. The search gives up
+     * within a few thousand nodes by throwing a {@link CancellationException};
+     * interrupting the thread running it has the same effect
+     */
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+
+    /**
+     * Throws if the search has been cancelled, has visited as many nodes as it may, or is a lazy
+     * SMP helper which is not needed any more, checking only once every 1024 nodes
+     */
+    private void checkCancelled() {
+        if ((nodesVisited & 1023) == 0 &&
+                (owner.cancelled || helper > 0 && owner.helpersDone || Thread.currentThread().isInterrupted() ||
+                 owner.nodeLimit > 0 && nodesVisited >= owner.nodeLimit)) {
+            throw new CancellationException("Search cancelled");
+        }
+    }
+
+
+    /**
+     * Returns the number of positions visited by the last search, by all of its threads
+     * @return the number of nodes of the search tree, the root included
+     */
+    @Override
+    public long getNodesVisited() {
+        return nodesVisited;
+    }
+
+
+    /**
+     * Limits the number of positions the next searches may visit: a search reaching the limit is
+     * cancelled as if by {@link #cancel()}. The limit is checked every 1024 nodes, and applies to
+     * every thread of a parallel search on its own
+     * @param nodeLimit the number of nodes, 0 for no limit
+     */
+    public void setNodeLimit(long nodeLimit) {
+        if (nodeLimit < 0) {
+            throw new IllegalArgumentException("The node limit cannot be negative, given " + nodeLimit);
+        }
+        this.nodeLimit = nodeLimit;
+    }
+
+
+    /**
+     * Fills the transposition table from a snapshot saved by an earlier run, see {@link TableSnapshot}
+     * @param file the file of the snapshot
+     * @return the number of entries of the snapshot, 0 if there is no usable snapshot or no table
+     */
+    public int loadTable(Path file) {
+        return table == null ? 0 : TableSnapshot.load(file, state.getRules(), sequenceScores, table);
+    }
+
+
+    /**
+     * Saves the transposition table to a snapshot, which later runs start from, see {@link TableSnapshot}
+     * @param file the file of the snapshot
+     * @return the number of entries saved, 0 if there is no table
+     * @throws IOException if the snapshot cannot be written
+     */
+    public int saveTable(Path file) throws IOException {
+        return table == null ? 0 : TableSnapshot.save(file, state.getRules(), sequenceScores, table);
+    }
+
+
+    /**
+     * Forgets the results cached in the transposition table by earlier searches,
+     * so that the next search starts from scratch
+     */
+    public void clearTable() {
+        if (table != null) {
+            table.clear();
+        }
+    }
+
+
+    /**
+     * Returns the score of the current position from the point of view of the player to move,
+     * pruning the moves which cannot affect the result (negamax form of alpha-beta).
+     * <p>If the score lies within (alpha, beta) it is exact, otherwise it is a bound on the
+     * side of the window it falls. When a transposition table is in use, a stored result deep enough
+     * to decide the position is returned straight away, and the stored best move is tried first</p>
+     * @param depthOfSearch the remaining depth of the search
+     * @param ply the distance from the root of the search
+     * @param alpha the score the player to move is already guaranteed
+     * @param beta the score the opponent is already guaranteed
+     * @return the score of the position for the player to move
+     */
+    private int alphaBeta(int depthOfSearch, int ply, int alpha, int beta) {
+
+        nodesVisited++;
+        checkCancelled();
+        principalVariationLengths[ply] = 0;
+
+        if (position.isGameOver() || depthOfSearch == 0) {
+            leafEvaluations++;
+            return position.getTurn() == O ? calculateScore(position) : -calculateScore(position);
+        }
+
+        /* searching deeper than the number of empty cells gives the same result */
+        int depth = Math.min(depthOfSearch, position.emptyCount());
+        int symmetry = 0;
+        long key = 0;
+        int firstMove = -1;
+
+        if (table != null) {
+            symmetry = position.canonicalSymmetry();
+            key = position.hash(symmetry);
+            long entry = table.probe(key);
+
+            if (entry == MISS) {
+                tableMisses++;
+            } else {
+                tableHits++;
+                int score = scoreOf(entry);
+                int bound = boundOf(entry);
+
+                if (depthOf(entry) >= depth &&
+                        (bound == EXACT || bound == LOWER && score >= beta || bound == UPPER && score <= alpha)) {
+                    return score;
+                }
+                if (moveOf(entry) >= 0) {
+                    firstMove = position.getRules().invert(symmetry, moveOf(entry));
+                }
+            }
+        }
+
+        int[] moves = moveLists[ply];
+        int count = generateMoves(position, moves);
+        if (helper > 0) {
+            rotate(moves, count, (helper + ply) % count);
+        }
+        if (firstMove >= 0) {
+            moveToFront(moves, count, firstMove);
+        }
+
+        int maxScore = -INFINITY;
+        int bestMove = -1;
+
+        for (int i = 0; i < count; i++) {
+            int cell = moves[i];
+
+            position.make(cell);
+            int currentScore = -alphaBeta(depth - 1, ply + 1, -beta, -Math.max(alpha, maxScore));
+            position.unmake(cell);
+
+            if (currentScore > maxScore) {
+                maxScore = currentScore;
+                bestMove = cell;
+                updatePrincipalVariation(ply, cell);
+                if (maxScore >= beta) {
+                    cutoffs++;
+                    break;
+                }
+            }
+        }
+
+        if (table != null) {
+            int bound = maxScore <= alpha ? UPPER : maxScore >= beta ? LOWER : EXACT;
+            table.store(key, maxScore, depth, bound, position.getRules().apply(symmetry, bestMove));
+        }
+
+        return maxScore;
+    }
+
+
+    /**
+     * Checks whether a key is among the first entries of an array
+     */
+    private static boolean contains(long[] keys, int length, long key) {
+        for (int i = 0; i < length; i++) {
+            if (keys[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Returns the minimax score of the current position, O being the maximising
+     * and X the minimising player
+     * @param depthOfSearch the remaining depth of the search
+     * @param ply the distance from the root of the search
+     * @return the score of the position
+     */
+    private int search(int depthOfSearch, int ply) {
+
+        nodesVisited++;
+        checkCancelled();
+        principalVariationLengths[ply] = 0;
+
+        if (position.isGameOver() || depthOfSearch == 0) {
+            leafEvaluations++;
+            return calculateScore(position);
+        }
+
+        boolean maximising = position.getTurn() == O;
+        int maxScore = maximising ? -INFINITY : INFINITY;
+        int[] moves = moveLists[ply];
+        int count = generateMoves(position, moves);
+
+        for (int i = 0; i < count; i++) {
+            int cell = moves[i];
+
+            position.make(cell);
+            int currentScore = search(depthOfSearch - 1, ply + 1);
+            position.unmake(cell);
+
+            if (maximising ? currentScore > maxScore : currentScore < maxScore) {
+                maxScore = currentScore;
+                updatePrincipalVariation(ply, cell);
+            }
+        }
+
+        return maxScore;
+    }
+
+
+    /**
+     * Calculates the total score, given a game state.
+     * <p> The total is the sum of the individual scores of every row, column and diagonal,
+     * which the position keeps up to date as moves are made and unmade</p>
+     * @param position the position to score
+     * @return the total score
+     */
+    static int calculateScore(Position position) {
+
+        return position.score();
+    }
+
+    /**
+     * Given the contents of a sequence of cells, this method returns a numerical score
+     * <p>The score only depends on how many cells of the sequence each player has marked,
+     * so a position and its rotations and reflections have the same score</p>
+     * @param o the number of cells of the sequence marked with an 'O'
+     * @param x the number of cells of the sequence marked with an 'X'
+     * @return a score drawn from the contents of the sequence: 1, 11, 111... when 'O' has marked
+     *         one, two, three... of its cells and the opposite when 'X' has, 0 if both or none have
+     */
+    static int getSequenceScore(int o, int x) {
+
+        return getSequenceScore(SEQUENCE_SCORES, o, x);
+    }
+
+    /**
+     * Returns the score of a sequence of cells as {@link #getSequenceScore(int, int)} does,
+     * with other scores, see {@link #setSequenceScores(int...)}
+     * @param scores the score of a sequence for each number of cells marked by one player, from 0
+     * @param o the number of cells of the sequence marked with an 'O'
+     * @param x the number of cells of the sequence marked with an 'X'
+     * @return the score of the sequence, positive if it favours 'O'
+     */
+    static int getSequenceScore(int[] scores, int o, int x) {
+
+        if (o > 0 && x > 0) {
+            return 0;
+        }
+
+        return o > 0 ? scores[o] : -scores[x];
+    }
+
+    /**
+     * Writes all the possible moves, in increasing order of cell index
+     * @param position the position to play a move in
+     * @param moves the array receiving the indices of the non played game board cells
+     * @return the number of moves written
+     */
+    static int generateMoves(Position position, int[] moves) {
+
+        int count = 0;
+
+        for (int word = 0; word < position.words(); word++) {
+            for (long empty = position.emptyCells(word); empty != 0; empty &= empty - 1) {
+                moves[count++] = word << 6 | Long.numberOfTrailingZeros(empty);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Rotates a list of moves to the left, so that a lazy SMP helper starts on a different move
+     * than the other threads
+     */
+    private static void rotate(int[] moves, int count, int distance) {
+        reverse(moves, 0, distance);
+        reverse(moves, distance, count);
+        reverse(moves, 0, count);
+    }
+
+    private static void reverse(int[] moves, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int move = moves[i];
+            moves[i] = moves[j];
+            moves[j] = move;
+        }
+    }
+
+    /**
+     * Swaps a move to the front of a list of moves, so it is searched first
+     */
+    private static void moveToFront(int[] moves, int count, int move) {
+        for (int i = 0; i < count; i++) {
+            if (moves[i] == move) {
+                moves[i] = moves[0];
+                moves[0] = move;
+                return;
+            }
+        }
+    }
+
+
+}
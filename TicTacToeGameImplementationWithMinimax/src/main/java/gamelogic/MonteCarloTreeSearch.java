@@ -0,0 +1,417 @@
+package gamelogic;
+
+import constants.Constants;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+
+import static constants.Constants.Player.O;
+
+/**
+ * A Monte Carlo tree search player (UCT): instead of scoring positions with a heuristic, it
+ * plays random games to the end from them and grows a tree towards the moves which win most often.
+ * <p>Each playout walks down the tree picking the child with the best upper confidence bound,
+ * expands the leaf it reaches once the leaf has been visited (the root before the first playout, so
+ * that even a single playout has a move to play), plays random moves to the end of the
+ * game and counts the result in every node of the path. The search stops after its number of
+ * playouts or its time, whichever comes first, and plays the most visited move. It needs no
+ * evaluation of the board and its time does not grow with the depth of the game, so it finds a
+ * sensible move on boards far too large for a full-width search</p>
+ * <p>The tree is kept in parallel primitive arrays, the children of a node side by side, and is
+ * kept between searches: when the next position follows from the root of the last search, the
+ * subtree of that position becomes the root, and when the arrays are full the nodes of other
+ * subtrees are dropped. The score of a result is the share of the playouts of the chosen move
+ * which 'O' wins, counting draws as half, from -1000 to 1000</p>
+ * @author NkolasN
+ */
+public class MonteCarloTreeSearch implements Engine {
+
+    private static final double EXPLORATION = Math.sqrt(2);
+
+    private final Rules rules;
+    private final int playouts;
+    private final long timeLimit;
+    private final SplittableRandom random;
+
+    /* the tree: for every node, its first child or -1 until it is expanded, its number of children,
+       the cell played to reach it, its visits and twice the points the player who played it scored */
+    private int[] firstChild;
+    private char[] childCount;
+    private char[] move;
+    private int[] visits;
+    private int[] points;
+    private int nodeCount;
+    private int root = -1;
+    private Position rootPosition;
+
+    private final int[] path;
+    private final int[] empty;
+    private Position position;
+    private long playoutsDone;
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a search with a tree of {@link Constants#MCTS_TREE_NODES} nodes
+     * @param rules the rules of the game
+     * @param playouts the number of playouts of every search
+     * @param timeLimitMillis the time a search may take in milliseconds, 0 for no limit
+     */
+    public MonteCarloTreeSearch(Rules rules, int playouts, long timeLimitMillis) {
+        this(rules, playouts, timeLimitMillis, Constants.MCTS_TREE_NODES, System.nanoTime());
+    }
+
+    /**
+     * Creates a search whose random moves are drawn from a seed, so that its searches can be
+     * repeated when it has no time limit
+     * @param rules the rules of the game
+     * @param playouts the number of playouts of every search
+     * @param timeLimitMillis the time a search may take in milliseconds, 0 for no limit
+     * @param treeNodes the most nodes the tree holds
+     * @param seed the seed of the random moves
+     */
+    public MonteCarloTreeSearch(Rules rules, int playouts, long timeLimitMillis, int treeNodes, long seed) {
+        if (playouts < 1 || timeLimitMillis < 0 || treeNodes < rules.getCells() + 1) {
+            throw new IllegalArgumentException("Invalid budget: " + playouts + " playouts, "
+                                               + timeLimitMillis + " ms, " + treeNodes + " nodes");
+        }
+
+        this.rules = rules;
+        this.playouts = playouts;
+        this.timeLimit = timeLimitMillis * 1_000_000;
+        this.random = new SplittableRandom(seed);
+
+        firstChild = new int[treeNodes];
+        childCount = new char[treeNodes];
+        move = new char[treeNodes];
+        visits = new int[treeNodes];
+        points = new int[treeNodes];
+        path = new int[rules.getCells() + 1];
+        empty = new int[rules.getCells()];
+    }
+
+    @Override
+    public SearchResult search(Position position) {
+        if (!position.getRules().equals(rules)) {
+            throw new IllegalArgumentException("Searching " + position.getRules() + " with a tree of " + rules);
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + timeLimit;
+        cancelled = false;
+        playoutsDone = 0;
+        this.position = position.copy();
+        moveRoot(position);
+
+        int sign = position.getTurn() == O ? 1 : -1;
+        if (position.isGameOver()) {
+            return new SearchResult(rules, SearchResult.pack(sign * Minimax.calculateScore(position), -1), 0, path, 0);
+        }
+        /* moveRoot leaves room for the children of a root not expanded yet */
+        if (firstChild[root] < 0) {
+            expand(root);
+        }
+
+        try {
+            while (playoutsDone < playouts && (timeLimit == 0 || (playoutsDone & 63) != 0 || System.nanoTime() < deadline)) {
+                if (cancelled || Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("Search cancelled");
+                }
+                playout();
+                playoutsDone++;
+            }
+        } finally {
+            SearchStatistics.getInstance().addCounters(playoutsDone, playoutsDone, 0, 0, 0, 0);
+        }
+
+        int length = 0;
+        for (int node = root; firstChild[node] >= 0 && length < path.length; ) {
+            node = mostVisitedChild(node);
+            if (visits[node] == 0) {
+                break;
+            }
+            path[length++] = move[node];
+        }
+
+        int best = mostVisitedChild(root);
+        int winShare = (int) Math.round(1000.0 * points[best] / Math.max(1, visits[best]) - 1000);
+        SearchResult result = new SearchResult(rules, SearchResult.pack(sign * winShare, move[best]), length, path, length);
+        SearchStatistics.getInstance().recordMove(System.nanoTime() - start, length);
+        return result;
+    }
+
+    /**
+     * Runs one playout from the root: down the tree, expanding the leaf reached, then random
+     * moves to the end of the game, and counts its result along the path
+     */
+    private void playout() {
+        int node = root;
+        int depth = 0;
+        path[0] = root;
+
+        while (firstChild[node] >= 0 && !position.isGameOver()) {
+            node = selectChild(node);
+            position.make(move[node]);
+            path[++depth] = node;
+        }
+
+        if (!position.isGameOver() && visits[node] > 0 && nodeCount + position.emptyCount() <= firstChild.length) {
+            expand(node);
+            node = firstChild[node];
+            position.make(move[node]);
+            path[++depth] = node;
+        }
+
+        /* random moves, each swapped to the end of the empty cells left, so the moves played
+           end up after the cells left in the reverse order they were played */
+        int count = emptyCells();
+        int left = count;
+        while (!position.isGameOver()) {
+            int i = random.nextInt(left--);
+            int cell = empty[i];
+            empty[i] = empty[left];
+            empty[left] = cell;
+            position.make(cell);
+        }
+
+        /* the player who made the last move won, unless the board is full without a line */
+        Constants.Player winner = !position.hasWinner() ? null : position.getTurn() == O ? Constants.Player.X : O;
+
+        for (int i = left; i < count; i++) {
+            position.unmake(empty[i]);
+        }
+
+        visits[root]++;
+        Constants.Player mover = rootPosition.getTurn();
+        for (int i = 1; i <= depth; i++) {
+            int n = path[i];
+            visits[n]++;
+            points[n] += winner == null ? 1 : winner == mover ? 2 : 0;
+            mover = mover == O ? Constants.Player.X : O;
+        }
+        for (int i = depth; i >= 1; i--) {
+            position.unmake(move[path[i]]);
+        }
+    }
+
+    /**
+     * Picks the child with the highest upper confidence bound, any unvisited child first
+     */
+    private int selectChild(int node) {
+        double logVisits = Math.log(visits[node]);
+        double bestBound = Double.NEGATIVE_INFINITY;
+        int best = -1;
+
+        for (int child = firstChild[node], end = child + childCount[node]; child < end; child++) {
+            if (visits[child] == 0) {
+                return child;
+            }
+            double bound = points[child] / (2.0 * visits[child]) + EXPLORATION * Math.sqrt(logVisits / visits[child]);
+            if (bound > bestBound) {
+                bestBound = bound;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    private int mostVisitedChild(int node) {
+        int best = firstChild[node];
+        for (int child = best + 1, end = best + childCount[node]; child < end; child++) {
+            if (visits[child] > visits[best]) {
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Adds a child for every move of a node, in random order so that unvisited children are
+     * tried in random order. A move winning on the spot is the only child added, so that the
+     * playouts through the move before learn that it lets the game be lost
+     */
+    private void expand(int node) {
+        int count = emptyCells();
+        for (int i = 0; i < count; i++) {
+            position.make(empty[i]);
+            boolean wins = position.hasWinner();
+            position.unmake(empty[i]);
+            if (wins) {
+                firstChild[node] = nodeCount;
+                childCount[node] = 1;
+                newNode(empty[i]);
+                return;
+            }
+        }
+
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int cell = empty[i];
+            empty[i] = empty[j];
+            empty[j] = cell;
+        }
+
+        firstChild[node] = nodeCount;
+        childCount[node] = (char) count;
+        for (int i = 0; i < count; i++) {
+            newNode(empty[i]);
+        }
+    }
+
+    private int newNode(int cell) {
+        int node = nodeCount++;
+        firstChild[node] = -1;
+        childCount[node] = 0;
+        move[node] = (char) cell;
+        visits[node] = 0;
+        points[node] = 0;
+        return node;
+    }
+
+    /**
+     * Writes the empty cells of the position to {@link #empty}
+     * @return the number of empty cells
+     */
+    private int emptyCells() {
+        int count = 0;
+        for (int word = 0; word < position.words(); word++) {
+            for (long cells = position.emptyCells(word); cells != 0; cells &= cells - 1) {
+                empty[count++] = word << 6 | Long.numberOfTrailingZeros(cells);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Makes the node of a position the root of the tree: the node reached from the last root by
+     * the moves which lead to the position, if the tree holds it, or a new tree otherwise. The
+     * subtree of the root is moved to the start of the arrays if they are nearly full
+     */
+    private void moveRoot(Position next) {
+        int node = root >= 0 ? descendant(next) : -1;
+
+        if (node < 0) {
+            nodeCount = 0;
+            node = newNode(0);
+        } else if (nodeCount + rules.getCells() > firstChild.length) {
+            node = compact(node);
+        }
+
+        root = node;
+        rootPosition = next.copy();
+    }
+
+    /**
+     * Finds the node of a position below the root, following the marks the position has and the
+     * root has not, in turn
+     * @return the node, -1 if the position does not follow from the root or the tree does not reach it
+     */
+    private int descendant(Position next) {
+        Constants.Player turn = rootPosition.getTurn();
+        int newMarks = 0;
+
+        for (int cell = 0; cell < rules.getCells(); cell++) {
+            boolean wasMarked = rootPosition.isMarkedBy(cell, Constants.Player.X) || rootPosition.isMarkedBy(cell, O);
+            if (wasMarked && !(rootPosition.isMarkedBy(cell, Constants.Player.X) ? next.isMarkedBy(cell, Constants.Player.X)
+                                                                               : next.isMarkedBy(cell, O))) {
+                return -1;
+            }
+            if (!wasMarked && (next.isMarkedBy(cell, Constants.Player.X) || next.isMarkedBy(cell, O))) {
+                newMarks++;
+            }
+        }
+
+        int node = root;
+        for (int ply = 0; ply < newMarks; ply++, turn = turn == O ? Constants.Player.X : O) {
+            int found = -1;
+            for (int child = firstChild[node], end = child + childCount[node]; firstChild[node] >= 0 && child < end; child++) {
+                if (next.isMarkedBy(move[child], turn)) {
+                    found = child;
+                    break;
+                }
+            }
+            if (found < 0) {
+                return -1;
+            }
+            node = found;
+        }
+        return next.getTurn() == turn ? node : -1;
+    }
+
+    /**
+     * Copies the subtree of a node to the start of the arrays, dropping every other node
+     * @return the index of the node after the copy
+     */
+    private int compact(int node) {
+        int capacity = firstChild.length;
+        int[] from = new int[capacity];
+        int[] newFirstChild = new int[capacity];
+        char[] newChildCount = new char[capacity];
+        char[] newMove = new char[capacity];
+        int[] newVisits = new int[capacity];
+        int[] newPoints = new int[capacity];
+
+        from[0] = node;
+        int count = 1;
+        for (int i = 0; i < count; i++) {
+            int old = from[i];
+            newChildCount[i] = childCount[old];
+            newMove[i] = move[old];
+            newVisits[i] = visits[old];
+            newPoints[i] = points[old];
+            newFirstChild[i] = firstChild[old] < 0 ? -1 : count;
+            for (int c = 0; firstChild[old] >= 0 && c < childCount[old]; c++) {
+                from[count++] = firstChild[old] + c;
+            }
+        }
+
+        firstChild = newFirstChild;
+        childCount = newChildCount;
+        move = newMove;
+        visits = newVisits;
+        points = newPoints;
+        nodeCount = count;
+        return 0;
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns the number of playouts of the last search
+     * @return the number of random games played
+     */
+    @Override
+    public long getNodesVisited() {
+        return playoutsDone;
+    }
+
+    /**
+     * @return the number of nodes of the tree below the root of the last search, the root included
+     */
+    public int getTreeSize() {
+        int size = 0;
+        int[] stack = new int[rules.getCells() + 1];
+        int[] next = new int[rules.getCells() + 1];
+        int depth = 0;
+        stack[0] = root;
+        next[0] = -1;
+
+        /* walks the tree depth first, without recursion */
+        while (depth >= 0) {
+            int node = stack[depth];
+            if (next[depth] < 0) {
+                size++;
+                next[depth] = 0;
+            }
+            if (firstChild[node] >= 0 && next[depth] < childCount[node]) {
+                stack[depth + 1] = firstChild[node] + next[depth]++;
+                next[++depth] = -1;
+            } else {
+                depth--;
+            }
+        }
+        return size;
+    }
+}
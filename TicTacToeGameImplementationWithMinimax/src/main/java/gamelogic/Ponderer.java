@@ -0,0 +1,214 @@
+package gamelogic;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static constants.Constants.Player.O;
+import static constants.Constants.Player.X;
+
+/**
+ * Thinks on the opponent's time: while the opponent decides on its move, the engine searches
+ * its reply to every move the opponent can play, so that the reply to the move actually played
+ * is often ready, or under way, when it arrives.
+ * <p>The replies are searched one after the other on the executor, starting with the move the
+ * engine expects, usually the second move of its principal variation. {@link #reply(Position, int)}
+ * then answers the move played with the reply already found, waits for the search of that reply
+ * if it is the one running, or else drops the speculative work and searches the position afresh.
+ * A minimax engine also keeps the positions it pondered in its transposition table, so even a
+ * fresh search is quicker</p>
+ * <p>The engine belongs to the ponderer: it must not be searched with while a reply is pending,
+ * and the executor must run one task at a time</p>
+ * @author NkolasN
+ */
+public class Ponderer {
+
+    private final Engine engine;
+    private final ExecutorService executor;
+    private final SearchResult[] replies;
+    private Position position;
+    private int searchingCell = -1;
+    private int requestedCell = -1;
+    private CompletableFuture<SearchResult> request;
+    private Future<?> task;
+    private int generation;
+    private long ponderHits;
+    private long ponderMisses;
+
+    /**
+     * Creates a ponderer
+     * @param engine the engine finding the replies, used by the ponderer only
+     * @param executor the executor the searches run on, with a single thread
+     * @param rules the rules of the game
+     */
+    public Ponderer(Engine engine, ExecutorService executor, Rules rules) {
+        this.engine = engine;
+        this.executor = executor;
+        this.replies = new SearchResult[rules.getCells()];
+    }
+
+    /**
+     * Starts searching the replies to every move of the opponent in the background, dropping
+     * the work on the previous position
+     * @param position the position, with the opponent to move
+     * @param expectedCell the move of the opponent searched first, or -1 to go in the order of the cells
+     */
+    public synchronized void ponder(Position position, int expectedCell) {
+        stop();
+        this.position = position.copy();
+        int ponderGeneration = generation;
+        task = executor.submit(() -> ponderReplies(ponderGeneration, expectedCell));
+    }
+
+    /**
+     * Searches the reply to every move of the pondered position, until the position changes
+     * or the move played is known
+     * @param ponderGeneration the value of {@link #generation} when pondering started
+     * @param expectedCell the move searched first, or -1
+     */
+    private void ponderReplies(int ponderGeneration, int expectedCell) {
+        for (int i = -1; i < replies.length; i++) {
+            int cell = i < 0 ? expectedCell : i;
+            Position next;
+
+            synchronized (this) {
+                if (ponderGeneration != generation || requestedCell >= 0) {
+                    return;
+                }
+                if (cell < 0 || i >= 0 && cell == expectedCell || !isEmpty(position, cell)) {
+                    continue;
+                }
+                next = position.copy();
+                next.make(cell);
+                if (next.isGameOver()) {
+                    continue;
+                }
+                searchingCell = cell;
+            }
+
+            SearchResult result;
+            try {
+                result = engine.search(next);
+            } catch (CancellationException e) {
+                return;
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    if (ponderGeneration == generation && requestedCell == cell) {
+                        request.completeExceptionally(e);
+                    }
+                    searchingCell = -1;
+                }
+                return;
+            }
+
+            synchronized (this) {
+                if (ponderGeneration != generation) {
+                    return;
+                }
+                searchingCell = -1;
+                replies[cell] = result;
+                if (requestedCell == cell) {
+                    request.complete(result);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the engine's reply to the move the opponent has played. Pondering stops: the
+     * reply is taken from it if it was found or is being searched, and searched afresh otherwise
+     * @param position the position after the move, with the engine to move
+     * @param cell the move the opponent played
+     * @return the result of the search of the reply, completed when the reply was pondered
+     */
+    public synchronized CompletableFuture<SearchResult> reply(Position position, int cell) {
+        boolean pondered = this.position != null && isEmpty(this.position, cell) &&
+                followedBy(this.position, cell, position);
+
+        if (pondered && replies[cell] != null) {
+            SearchResult result = replies[cell];
+            stop();
+            ponderHits++;
+            return CompletableFuture.completedFuture(result);
+        }
+        if (pondered && searchingCell == cell) {
+            requestedCell = cell;
+            request = new CompletableFuture<>();
+            ponderHits++;
+            return request;
+        }
+
+        stop();
+        ponderMisses++;
+        CompletableFuture<SearchResult> search = new CompletableFuture<>();
+        Position root = position.copy();
+        request = search;
+        task = executor.submit(() -> {
+            try {
+                search.complete(engine.search(root));
+            } catch (CancellationException e) {
+                search.cancel(false);
+            } catch (RuntimeException e) {
+                search.completeExceptionally(e);
+            }
+        });
+        return search;
+    }
+
+    /**
+     * Drops the replies pondered and stops the search running, if any. A pending
+     * reply is cancelled
+     */
+    public synchronized void stop() {
+        generation++;
+        if (request != null && !request.isDone()) {
+            request.cancel(false);
+        }
+        if (task != null && !task.isDone()) {
+            task.cancel(true);
+            engine.cancel();
+        }
+        request = null;
+        task = null;
+        position = null;
+        searchingCell = -1;
+        requestedCell = -1;
+        Arrays.fill(replies, null);
+    }
+
+    /**
+     * Returns the number of replies which were found, or being searched, when the move was played
+     * @return the number of moves answered from pondering
+     */
+    public synchronized long getPonderHits() {
+        return ponderHits;
+    }
+
+    /**
+     * Returns the number of replies which had to be searched from scratch
+     * @return the number of moves pondering did not foresee
+     */
+    public synchronized long getPonderMisses() {
+        return ponderMisses;
+    }
+
+    /**
+     * Checks that a position is the one pondered after a move
+     * @param pondered the position pondered
+     * @param cell the move played
+     * @param position the position to check
+     * @return true if the position has the marks of the pondered one and the move, false otherwise
+     */
+    private static boolean followedBy(Position pondered, int cell, Position position) {
+        Position next = pondered.copy();
+        next.make(cell);
+        return next.hash(0) == position.hash(0) && next.getTurn() == position.getTurn();
+    }
+
+    private static boolean isEmpty(Position position, int cell) {
+        return !position.isMarkedBy(cell, X) && !position.isMarkedBy(cell, O);
+    }
+}
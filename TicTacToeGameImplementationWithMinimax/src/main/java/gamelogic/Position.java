@@ -0,0 +1,467 @@
+package gamelogic;
+
+import constants.Constants;
+
+import static constants.Constants.Player.O;
+import static constants.Constants.Player.X;
+
+/**
+ * A compact representation of a position used by the search engine.
+ * <p>Every cell is identified by its index on the board (see {@link Rules}) and each player owns
+ * a bit mask, split in 64-bit words, with a bit set for every cell it has marked. Making or
+ * unmaking a move flips one bit of the mask of the player concerned. The position also counts
+ * the marks of each player on every line going through the cell, so a win is detected as soon as
+ * one of these counts reaches k. From the same counts it keeps the heuristic score of the position,
+ * updating it for the lines going through the cell on every move, so evaluating a position
+ * costs nothing more than reading it</p>
+ * <p>The position also keeps a Zobrist hash of each of its symmetric images, updated on every
+ * move, so that the hash of its canonical form is available without rebuilding the board</p>
+ * @author NkolasN
+ */
+public class Position {
+
+    private final Rules rules;
+    private final long[][] masks;
+    private final int[][] lineCounts;
+    private final long[] hashes;
+    private final int[] sequenceScores;
+    private int turn;
+    private int marks;
+    private int completedLines;
+    private int score;
+
+    /**
+     * Creates an empty position of the standard 3x3 game with X to move
+     */
+    public Position() {
+        this(Rules.STANDARD);
+    }
+
+    /**
+     * Creates an empty position with X to move
+     * @param rules the rules of the game
+     */
+    public Position(Rules rules) {
+        this.rules = rules;
+        masks = new long[2][(rules.getCells() + 63) >>> 6];
+        lineCounts = new int[2][rules.getLines().length];
+        hashes = new long[rules.getSymmetryCount()];
+        sequenceScores = Minimax.SEQUENCE_SCORES;
+    }
+
+    /**
+     * Creates a position of the standard 3x3 game out of the masks of both players
+     * @param xMask the cells marked with an 'X'
+     * @param oMask the cells marked with an 'O'
+     * @param turn the player to move
+     */
+    public Position(int xMask, int oMask, Constants.Player turn) {
+        this(Rules.STANDARD);
+
+        if ((xMask & oMask) != 0 || ((xMask | oMask) >>> rules.getCells()) != 0) {
+            throw new IllegalArgumentException("Invalid masks, given " + xMask + " and " + oMask);
+        }
+        for (int cell = 0; cell < rules.getCells(); cell++) {
+            if ((xMask >>> cell & 1) != 0) {
+                mark(cell, 0);
+            } else if ((oMask >>> cell & 1) != 0) {
+                mark(cell, 1);
+            }
+        }
+        setTurn(turn);
+    }
+
+    private Position(Position other, int[] sequenceScores) {
+        rules = other.rules;
+        masks = new long[][]{other.masks[0].clone(), other.masks[1].clone()};
+        lineCounts = new int[][]{other.lineCounts[0].clone(), other.lineCounts[1].clone()};
+        hashes = other.hashes.clone();
+        this.sequenceScores = sequenceScores;
+        turn = other.turn;
+        marks = other.marks;
+        completedLines = other.completedLines;
+
+        if (sequenceScores == other.sequenceScores) {
+            score = other.score;
+        } else {
+            for (int line = 0; line < lineCounts[0].length; line++) {
+                score += lineScore(1, lineCounts[1][line], lineCounts[0][line]);
+            }
+        }
+    }
+
+    /**
+     * Builds the position of a game state, with the player whose turn it is to move
+     * @param state the state of the game
+     * @return the position of the board held by the state
+     */
+    public static Position of(State state) {
+        return of(state, state.getTurn());
+    }
+
+    /**
+     * Builds the position of a game state with the given player to move
+     * @param state the state of the game
+     * @param turn the player to move
+     * @return the position of the board held by the state
+     */
+    public static Position of(State state, Constants.Player turn) {
+        Rules rules = state.getRules();
+        Position position = new Position(rules);
+
+        for (Coordinate c : state.getCoordinates()) {
+            if (c.markedWith("X")) {
+                position.mark(rules.cellOf(c), 0);
+            } else if (c.markedWith("O")) {
+                position.mark(rules.cellOf(c), 1);
+            }
+        }
+        position.setTurn(turn);
+
+        return position;
+    }
+
+    /**
+     * Builds the position of a board written row by row, with one character per cell:
+     * 'X' or 'O' for a marked cell, in either case, and '-', '.' or '_' for an empty one
+     * @param rules the rules of the game
+     * @param board one character per cell
+     * @param turn the player to move, null to infer it from the number of marks
+     * @return the position of the board
+     * @throws IllegalArgumentException if the board has the wrong length or an invalid character
+     */
+    public static Position parse(Rules rules, CharSequence board, Constants.Player turn) {
+        if (board == null || board.length() != rules.getCells()) {
+            throw new IllegalArgumentException("The board must have one character for each of the "
+                                               + rules.getCells() + " cells of a " + rules + " board");
+        }
+
+        Position position = new Position(rules);
+        for (int cell = 0; cell < board.length(); cell++) {
+            char c = board.charAt(cell);
+            if (c == 'X' || c == 'x') {
+                position.mark(cell, 0);
+            } else if (c == 'O' || c == 'o') {
+                position.mark(cell, 1);
+            } else if (c != '-' && c != '.' && c != '_') {
+                throw new IllegalArgumentException("Invalid character '" + c + "' in the board");
+            }
+        }
+        position.setTurn(turn != null ? turn : position.markCount(X) > position.markCount(O) ? O : X);
+
+        return position;
+    }
+
+    /**
+     * Creates a new game state holding the marks of this position
+     * @return a state with the same cells marked and the same player to move
+     */
+    public State toState() {
+        State state = new State(rules);
+
+        for (Coordinate c : state.getCoordinates()) {
+            int cell = rules.cellOf(c);
+            if (isMarkedBy(cell, X)) {
+                c.setMarked(X);
+            } else if (isMarkedBy(cell, O)) {
+                c.setMarked(O);
+            }
+        }
+        state.setTurn(getTurn());
+
+        return state;
+    }
+
+    /**
+     * Marks a cell for the player to move and passes the turn to the other player
+     * @param cell the index of an empty cell
+     */
+    public void make(int cell) {
+        mark(cell, turn);
+        setTurn(turn == 0 ? O : X);
+    }
+
+    /**
+     * Takes back a move made with {@link #make(int)}
+     * @param cell the index of the cell marked by the last move
+     */
+    public void unmake(int cell) {
+        setTurn(turn == 0 ? O : X);
+        unmark(cell, turn);
+    }
+
+    /**
+     * Marks a cell for a player, updating the line counts, the score and the hashes
+     * @param cell the index of an empty cell
+     * @param player 0 for X, 1 for O
+     */
+    private void mark(int cell, int player) {
+        masks[player][cell >>> 6] ^= 1L << cell;
+        marks++;
+
+        int[] counts = lineCounts[player];
+        int[] opponentCounts = lineCounts[player ^ 1];
+        for (int line : rules.linesThrough(cell)) {
+            int before = lineScore(player, counts[line], opponentCounts[line]);
+            if (++counts[line] == rules.getK()) {
+                completedLines++;
+            }
+            score += lineScore(player, counts[line], opponentCounts[line]) - before;
+        }
+
+        long[] keys = rules.zobrist[player];
+        for (int s = 0; s < hashes.length; s++) {
+            hashes[s] ^= keys[rules.apply(s, cell)];
+        }
+    }
+
+    /**
+     * Takes back a mark made with {@link #mark(int, int)}
+     * @param cell the index of a cell marked by the player
+     * @param player 0 for X, 1 for O
+     */
+    private void unmark(int cell, int player) {
+        masks[player][cell >>> 6] ^= 1L << cell;
+        marks--;
+
+        int[] counts = lineCounts[player];
+        int[] opponentCounts = lineCounts[player ^ 1];
+        for (int line : rules.linesThrough(cell)) {
+            int before = lineScore(player, counts[line], opponentCounts[line]);
+            if (counts[line]-- == rules.getK()) {
+                completedLines--;
+            }
+            score += lineScore(player, counts[line], opponentCounts[line]) - before;
+        }
+
+        long[] keys = rules.zobrist[player];
+        for (int s = 0; s < hashes.length; s++) {
+            hashes[s] ^= keys[rules.apply(s, cell)];
+        }
+    }
+
+    /**
+     * Returns the score of a line, see {@link Minimax#getSequenceScore(int[], int, int)}
+     * @param player 0 for X, 1 for O
+     * @param marks the number of cells of the line marked by the player
+     * @param opponentMarks the number of cells of the line marked by the other player
+     * @return the score of the line, positive if it favours 'O'
+     */
+    private int lineScore(int player, int marks, int opponentMarks) {
+        return player == 1 ? Minimax.getSequenceScore(sequenceScores, marks, opponentMarks)
+                           : Minimax.getSequenceScore(sequenceScores, opponentMarks, marks);
+    }
+
+    /**
+     * Sets the player to move, toggling the side to move in the hashes if it changes
+     * @param player X or O
+     */
+    private void setTurn(Constants.Player player) {
+        if (player.ordinal() != turn) {
+            turn = player.ordinal();
+            for (int s = 0; s < hashes.length; s++) {
+                hashes[s] ^= rules.oToMove;
+            }
+        }
+    }
+
+
+    /**
+     * Returns the symmetry which maps this position to its canonical form, the image
+     * with the smallest hash
+     * @return the index of the symmetry, see {@link Rules#apply(int, int)}
+     */
+    public int canonicalSymmetry() {
+        int canonical = 0;
+
+        for (int s = 1; s < hashes.length; s++) {
+            if (hashes[s] < hashes[canonical]) {
+                canonical = s;
+            }
+        }
+        return canonical;
+    }
+
+
+    /**
+     * Returns the Zobrist hash of an image of this position
+     * @param symmetry the index of the symmetry giving the image
+     * @return the hash of the image
+     */
+    public long hash(int symmetry) {
+        return hashes[symmetry];
+    }
+
+
+    /**
+     * Returns the hash of the canonical form of this position, which is the
+     * same for all the positions related to it by a symmetry
+     * @return the canonical hash
+     */
+    public long canonicalHash() {
+        return hashes[canonicalSymmetry()];
+    }
+
+    /**
+     * Returns the base-3 encoding of the board, in which the digit of every cell
+     * is 0 if it is empty, 1 if it is marked with an 'X' and 2 if it is marked with an 'O'
+     * @return a number between 0 and 3^cells - 1 identifying the marks of the board
+     */
+    public long code() {
+        if (rules.getCells() > 39) {
+            throw new IllegalStateException("Board too large to encode in base 3: " + rules);
+        }
+
+        long code = 0;
+        for (int cell = rules.getCells() - 1; cell >= 0; cell--) {
+            code = code * 3 + (isMarkedBy(cell, X) ? 1 : isMarkedBy(cell, O) ? 2 : 0);
+        }
+        return code;
+    }
+
+    /**
+     * Creates the position of a base-3 encoding of the board, see {@link #code()}
+     * @param rules the rules of the game
+     * @param code the encoding of the board
+     * @param turn the player to move
+     * @return the position with the marks of the encoding
+     */
+    public static Position fromCode(Rules rules, long code, Constants.Player turn) {
+        Position position = new Position(rules);
+
+        for (int cell = 0; cell < rules.getCells(); cell++, code /= 3) {
+            if (code % 3 == 1) {
+                position.mark(cell, 0);
+            } else if (code % 3 == 2) {
+                position.mark(cell, 1);
+            }
+        }
+        position.setTurn(turn);
+
+        return position;
+    }
+
+    /**
+     * Whether either player has completed a line
+     * @return true if the game has been won, false otherwise
+     */
+    public boolean hasWinner() {
+        return completedLines > 0;
+    }
+
+    /**
+     * Whether the game is over, either won or with every cell marked
+     * @return true if no more moves can be played, false otherwise
+     */
+    public boolean isGameOver() {
+        return completedLines > 0 || marks == rules.getCells();
+    }
+
+    /**
+     * Returns the number of 64-bit words the masks are split in
+     * @return the number of words
+     */
+    public int words() {
+        return masks[0].length;
+    }
+
+    /**
+     * Returns the empty cells of a word of the masks: bit i is set if the
+     * cell {@code 64 * word + i} has not been marked yet
+     * @param word the index of the word
+     * @return the empty cells of the word
+     */
+    public long emptyCells(int word) {
+        int remaining = rules.getCells() - (word << 6);
+        long board = remaining >= 64 ? -1L : (1L << remaining) - 1;
+        return board & ~(masks[0][word] | masks[1][word]);
+    }
+
+    /**
+     * Returns the number of cells which have not been marked yet
+     * @return the number of empty cells
+     */
+    public int emptyCount() {
+        return rules.getCells() - marks;
+    }
+
+    /**
+     * Returns the number of cells marked by a player
+     * @param player X or O
+     * @return the number of marks of the player
+     */
+    public int markCount(Constants.Player player) {
+        int count = 0;
+        for (long word : masks[player.ordinal()]) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Checks if a cell has been marked by a player
+     * @param cell the index of the cell
+     * @param player X or O
+     * @return true if the player has marked the cell, false otherwise
+     */
+    public boolean isMarkedBy(int cell, Constants.Player player) {
+        return (masks[player.ordinal()][cell >>> 6] >>> cell & 1) != 0;
+    }
+
+    /**
+     * Returns the number of cells a player has marked on a line
+     * @param player 0 for X, 1 for O
+     * @param line the index of the line, see {@link Rules#getLines()}
+     * @return the number of marks of the player on the line
+     */
+    int lineCount(int player, int line) {
+        return lineCounts[player][line];
+    }
+
+    /**
+     * Returns the heuristic score of the position, the sum of the scores of all the lines
+     * of the board, kept up to date on every move
+     * @return the score of the position, positive if it favours 'O'
+     */
+    int score() {
+        return score;
+    }
+
+    /**
+     * The player whose turn it is
+     * @return X if X plays next, O otherwise
+     */
+    public Constants.Player getTurn() {
+        return turn == 0 ? X : O;
+    }
+
+    /**
+     * Returns the rules of the game the position belongs to
+     * @return the rules of the game
+     */
+    public Rules getRules() {
+        return rules;
+    }
+
+    /**
+     * Returns a copy of this position which can be searched independently
+     * @return a new position with the same marks and player to move
+     */
+    public Position copy() {
+        return new Position(this, sequenceScores);
+    }
+
+    /**
+     * Returns a copy of this position whose lines are scored differently, see
+     * {@link Minimax#setSequenceScores(int...)}
+     * @param sequenceScores the score of a line for each number of marks of one player, from 0 to k
+     * @return a new position with the same marks and player to move, and its score with these scores
+     */
+    Position copy(int[] sequenceScores) {
+        if (sequenceScores.length <= rules.getK()) {
+            throw new IllegalArgumentException("Lines of " + rules + " need " + rules.getK() + " scores, given "
+                                               + (sequenceScores.length - 1));
+        }
+        return new Position(this, sequenceScores);
+    }
+}
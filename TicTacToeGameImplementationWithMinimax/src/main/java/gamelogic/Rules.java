@@ -0,0 +1,279 @@
+package gamelogic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The rules of an m,n,k game: a board {@code width} cells wide and {@code height} cells high,
+ * won by the first player to mark {@code k} cells in a row, column or diagonal.
+ * <p>Every cell is identified by its index {@code width * x + y}, x being the row and y the column
+ * of the cell. The winning lines, the symmetries of the board and the random keys used to hash
+ * positions are all generated from the three parameters</p>
+ * @author NkolasN
+ */
+public final class Rules {
+
+    /** The classic 3x3 game with three in a row */
+    public static final Rules STANDARD = new Rules(3, 3, 3);
+
+    /** The longest row the evaluation can score without overflowing */
+    public static final int MAX_K = 6;
+
+    private final int width;
+    private final int height;
+    private final int k;
+    private final int cells;
+    private final int[][] lines;
+    private final int[][] linesThroughCell;
+    private final int[][] permutations;
+    private final int[][] inverse;
+    final long[][] zobrist;
+    final long oToMove;
+
+    /**
+     * Creates the rules of a game
+     * @param width the number of columns of the board
+     * @param height the number of rows of the board
+     * @param k the number of cells in a row needed to win
+     */
+    public Rules(int width, int height, int k) {
+        if (width < 1 || height < 1 || width * height > 0xFFFE) {
+            throw new IllegalArgumentException("Invalid board size, given " + width + "x" + height);
+        }
+        if (k < 2 || k > MAX_K || k > Math.max(width, height)) {
+            throw new IllegalArgumentException("Must be between 2 and " + Math.min(MAX_K, Math.max(width, height))
+                                               + " in a row, given " + k);
+        }
+
+        this.width = width;
+        this.height = height;
+        this.k = k;
+        this.cells = width * height;
+        this.lines = generateLines();
+        this.linesThroughCell = indexLines();
+        this.permutations = generateSymmetries();
+        this.inverse = new int[permutations.length][cells];
+
+        for (int s = 0; s < permutations.length; s++) {
+            for (int cell = 0; cell < cells; cell++) {
+                inverse[s][permutations[s][cell]] = cell;
+            }
+        }
+
+        Random random = new Random(0x5EED);
+        zobrist = new long[2][cells];
+        for (long[] keys : zobrist) {
+            for (int cell = 0; cell < cells; cell++) {
+                keys[cell] = random.nextLong();
+            }
+        }
+        oToMove = random.nextLong();
+    }
+
+    /**
+     * Creates every line of k cells: the rows, then the columns, the diagonals
+     * and the anti-diagonals
+     */
+    private int[][] generateLines() {
+        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+        List<int[]> generated = new ArrayList<>();
+
+        for (int[] d : directions) {
+            for (int x = 0; x < height; x++) {
+                for (int y = 0; y < width; y++) {
+                    int endX = x + (k - 1) * d[0];
+                    int endY = y + (k - 1) * d[1];
+
+                    if (endX < height && endY >= 0 && endY < width) {
+                        int[] line = new int[k];
+                        for (int i = 0; i < k; i++) {
+                            line[i] = (x + i * d[0]) * width + y + i * d[1];
+                        }
+                        generated.add(line);
+                    }
+                }
+            }
+        }
+
+        return generated.toArray(new int[0][]);
+    }
+
+    /**
+     * Lists, for every cell, the lines going through it
+     */
+    private int[][] indexLines() {
+        int[] sizes = new int[cells];
+        for (int[] line : lines) {
+            for (int cell : line) {
+                sizes[cell]++;
+            }
+        }
+
+        int[][] index = new int[cells][];
+        for (int cell = 0; cell < cells; cell++) {
+            index[cell] = new int[sizes[cell]];
+            sizes[cell] = 0;
+        }
+        for (int l = 0; l < lines.length; l++) {
+            for (int cell : lines[l]) {
+                index[cell][sizes[cell]++] = l;
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Creates the permutations of the cells under every symmetry of the board: the eight rotations
+     * and reflections of a square board, or the identity, the half turn and the two reflections
+     * of a rectangular one
+     */
+    private int[][] generateSymmetries() {
+        int count = width == height ? 8 : 4;
+        int[][] generated = new int[count][cells];
+        int w = width - 1;
+        int h = height - 1;
+
+        for (int x = 0; x < height; x++) {
+            for (int y = 0; y < width; y++) {
+                int[][] images = {
+                        {x, y},          // identity
+                        {h - x, w - y},  // rotation by 180 degrees
+                        {x, w - y},      // reflection in the vertical axis
+                        {h - x, y},      // reflection in the horizontal axis
+                        {y, w - x},      // rotation by 90 degrees
+                        {w - y, x},      // rotation by 270 degrees
+                        {y, x},          // reflection in the main diagonal
+                        {w - y, h - x}   // reflection in the anti-diagonal
+                };
+
+                for (int s = 0; s < count; s++) {
+                    generated[s][x * width + y] = images[s][0] * width + images[s][1];
+                }
+            }
+        }
+
+        return generated;
+    }
+
+    /**
+     * Returns the number of columns of the board
+     * @return the width of the board
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the number of rows of the board
+     * @return the height of the board
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of cells in a row needed to win
+     * @return k
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Returns the number of cells of the board
+     * @return width times height
+     */
+    public int getCells() {
+        return cells;
+    }
+
+    /**
+     * Returns the winning lines, each one given as the indices of its k cells
+     * @return the lines of the board
+     */
+    int[][] getLines() {
+        return lines;
+    }
+
+    /**
+     * Returns the lines going through a cell
+     * @param cell the index of the cell
+     * @return the indices of the lines, see {@link #getLines()}
+     */
+    int[] linesThrough(int cell) {
+        return linesThroughCell[cell];
+    }
+
+    /**
+     * Returns the number of symmetries of the board
+     * @return 8 for a square board, 4 otherwise
+     */
+    public int getSymmetryCount() {
+        return permutations.length;
+    }
+
+    /**
+     * Moves a cell through a symmetry
+     * @param symmetry the index of the symmetry
+     * @param cell the index of the cell
+     * @return the index of the image of the cell
+     */
+    public int apply(int symmetry, int cell) {
+        return permutations[symmetry][cell];
+    }
+
+    /**
+     * Moves a cell back through a symmetry
+     * @param symmetry the index of the symmetry
+     * @param cell the index of an image cell
+     * @return the index of the cell the symmetry moves to {@code cell}
+     */
+    public int invert(int symmetry, int cell) {
+        return inverse[symmetry][cell];
+    }
+
+    /**
+     * Maps a cell to its index on the board
+     * @param c the cell
+     * @return the index {@code width * x + y} of the cell
+     */
+    public int cellOf(Coordinate c) {
+        return c.getX() * width + c.getY();
+    }
+
+    /**
+     * Maps an index back to a cell
+     * @param cell the index of the cell
+     * @return a coordinate object with the x and y values of the cell
+     */
+    public Coordinate coordinateOf(int cell) {
+        return new Coordinate(cell / width, cell % width);
+    }
+
+    /**
+     * Defines equality among rules. Two rules are equal iff they have
+     * the same board size and the same number of cells in a row to win
+     * @param o the other rules
+     * @return true if the other rules describe the same game, false otherwise
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Rules)) {
+            return false;
+        }
+        Rules other = (Rules) o;
+        return width == other.width && height == other.height && k == other.k;
+    }
+
+    @Override
+    public int hashCode() {
+        return (width * 31 + height) * 31 + k;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + " k=" + k;
+    }
+}
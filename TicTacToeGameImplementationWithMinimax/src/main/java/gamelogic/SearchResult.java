@@ -0,0 +1,126 @@
+package gamelogic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of a search of the AI player: the score of the position, the move to play,
+ * the depth the search reached and the principal variation, the line of play the search
+ * expects from both players.
+ * <p>While searching, the score and the move are kept packed in a single {@code long}, see
+ * {@link #pack(int, int)}, and the result is only built once the search is over. The coordinates
+ * of the principal variation are only created if it is asked for</p>
+ * @author NkolasN
+ */
+public final class SearchResult {
+
+    private final int score;
+    private final int cell;
+    private final Coordinate move;
+    private final int depth;
+    private final Rules rules;
+    private final int[] line;
+    private List<Coordinate> principalVariation;
+
+    /**
+     * Creates the result of a search
+     * @param rules the rules of the game searched
+     * @param best the packed score and move of the search
+     * @param depth the depth the search reached
+     * @param line the cells of the principal variation, starting with the move to play
+     * @param length the number of moves of the principal variation
+     */
+    SearchResult(Rules rules, long best, int depth, int[] line, int length) {
+        this.score = scoreOf(best);
+        this.cell = moveOf(best);
+        this.move = cell >= 0 ? rules.coordinateOf(cell) : null;
+        this.depth = depth;
+        this.rules = rules;
+        this.line = Arrays.copyOf(line, length);
+    }
+
+    /**
+     * Packs a score and a move
+     * @param score the score
+     * @param move the index of a cell, -1 for no move
+     * @return the score in the high and the move in the low 32 bits
+     */
+    static long pack(int score, int move) {
+        return (long) score << 32 | (move & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param best a packed score and move
+     * @return the score
+     */
+    static int scoreOf(long best) {
+        return (int) (best >> 32);
+    }
+
+    /**
+     * @param best a packed score and move
+     * @return the index of the cell, -1 for no move
+     */
+    static int moveOf(long best) {
+        return (int) best;
+    }
+
+    /**
+     * Returns the score of the position searched
+     * @return the score, positive if it favours 'O'
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the move to play
+     * @return the coordinate of the cell to mark, null if the game is over
+     */
+    public Coordinate getMove() {
+        return move;
+    }
+
+    /**
+     * Returns the index of the cell to play, see {@link Rules#cellOf(Coordinate)}
+     * @return the index of the cell to mark, -1 if the game is over
+     */
+    public int getCell() {
+        return cell;
+    }
+
+    /**
+     * Returns the number of moves the search looked ahead
+     * @return the depth reached by the search
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the moves both players are expected to play, starting with the move to play.
+     * It may be shorter than the depth when part of it was cut off by the transposition table
+     * @return an unmodifiable list of coordinates
+     */
+    public synchronized List<Coordinate> getPrincipalVariation() {
+        if (principalVariation == null) {
+            List<Coordinate> variation = new ArrayList<>(line.length);
+            for (int cell : line) {
+                variation.add(rules.coordinateOf(cell));
+            }
+            principalVariation = Collections.unmodifiableList(variation);
+        }
+        return principalVariation;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder();
+        for (Coordinate c : getPrincipalVariation()) {
+            line.append(line.length() == 0 ? "" : " ").append(c.getX()).append(',').append(c.getY());
+        }
+        return "score " + score + ", depth " + depth + ", pv " + line;
+    }
+}
@@ -0,0 +1,198 @@
+package gamelogic;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of every search of the AI player in the process, published as the JMX MBean
+ * {@value #OBJECT_NAME}.
+ * <p>A search counts into plain fields of its own while it runs and adds them to these counters
+ * once it is over, every thread of a parallel search doing so for its own part. The counters are
+ * {@link LongAdder}s, so searches running on many threads at once do not contend on them and
+ * they can stay enabled under load</p>
+ * @author NkolasN
+ */
+public final class SearchStatistics implements SearchStatisticsMBean {
+
+    /** The name the counters are published under */
+    public static final String OBJECT_NAME = "gamelogic:type=SearchStatistics";
+
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder nodesVisited = new LongAdder();
+    private final LongAdder leafEvaluations = new LongAdder();
+    private final LongAdder cutoffs = new LongAdder();
+    private final LongAdder transpositionHits = new LongAdder();
+    private final LongAdder transpositionMisses = new LongAdder();
+    private final LongAdder solutionTableHits = new LongAdder();
+    private final LongAdder moveTime = new LongAdder();
+    private final LongAccumulator maxDepthReached = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxMoveTime = new LongAccumulator(Math::max, 0);
+    private volatile long lastDepthReached;
+    private volatile long lastMoveTime;
+
+    private SearchStatistics() {
+    }
+
+    private static class Holder {
+        private static final SearchStatistics INSTANCE = register(new SearchStatistics());
+    }
+
+    /**
+     * Returns the counters, publishing them on the platform MBean server on the first call. Starting
+     * the platform MBean server takes a few hundred milliseconds, so it is done on a thread of its own
+     * rather than delaying the first search
+     * @return the counters of the searches
+     */
+    public static SearchStatistics getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private static SearchStatistics register(SearchStatistics statistics) {
+        Thread registration = new Thread(() -> {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(statistics, new ObjectName(OBJECT_NAME));
+            } catch (JMException | SecurityException e) {
+                System.err.println("Search statistics not published through JMX: " + e);
+            }
+        }, "search-statistics");
+        registration.setDaemon(true);
+        registration.start();
+        return statistics;
+    }
+
+    /**
+     * Adds the counters of a search, or of the part of it run by one thread
+     */
+    void addCounters(long nodes, long leaves, long cutoffCount, long hits, long misses, long solutionHits) {
+        add(nodesVisited, nodes);
+        add(leafEvaluations, leaves);
+        add(cutoffs, cutoffCount);
+        add(transpositionHits, hits);
+        add(transpositionMisses, misses);
+        add(solutionTableHits, solutionHits);
+    }
+
+    /**
+     * Adds to a counter, leaving it alone when there is nothing to add: searches answered
+     * from the solution table take well under a microsecond and leave most counters at zero
+     */
+    private static void add(LongAdder counter, long value) {
+        if (value != 0) {
+            counter.add(value);
+        }
+    }
+
+    /**
+     * Records a completed search
+     * @param nanos the time the search took
+     * @param depth the depth the search looked ahead
+     */
+    void recordMove(long nanos, int depth) {
+        moves.increment();
+        moveTime.add(nanos);
+        maxMoveTime.accumulate(nanos);
+        maxDepthReached.accumulate(depth);
+        lastMoveTime = nanos;
+        lastDepthReached = depth;
+    }
+
+    @Override
+    public long getMoves() {
+        return moves.sum();
+    }
+
+    @Override
+    public long getNodesVisited() {
+        return nodesVisited.sum();
+    }
+
+    @Override
+    public long getLeafEvaluations() {
+        return leafEvaluations.sum();
+    }
+
+    @Override
+    public long getCutoffs() {
+        return cutoffs.sum();
+    }
+
+    @Override
+    public long getTranspositionHits() {
+        return transpositionHits.sum();
+    }
+
+    @Override
+    public long getTranspositionMisses() {
+        return transpositionMisses.sum();
+    }
+
+    @Override
+    public double getTranspositionHitRate() {
+        long hits = transpositionHits.sum();
+        long lookups = hits + transpositionMisses.sum();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public long getSolutionTableHits() {
+        return solutionTableHits.sum();
+    }
+
+    @Override
+    public long getMaxDepthReached() {
+        return maxDepthReached.get();
+    }
+
+    @Override
+    public long getLastDepthReached() {
+        return lastDepthReached;
+    }
+
+    @Override
+    public long getTotalMoveTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(moveTime.sum());
+    }
+
+    @Override
+    public double getAverageMoveTimeMicros() {
+        long count = moves.sum();
+        return count == 0 ? 0 : moveTime.sum() / 1e3 / count;
+    }
+
+    @Override
+    public long getLastMoveTimeMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(lastMoveTime);
+    }
+
+    @Override
+    public long getMaxMoveTimeMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxMoveTime.get());
+    }
+
+    @Override
+    public void reset() {
+        moves.reset();
+        nodesVisited.reset();
+        leafEvaluations.reset();
+        cutoffs.reset();
+        transpositionHits.reset();
+        transpositionMisses.reset();
+        solutionTableHits.reset();
+        moveTime.reset();
+        maxDepthReached.reset();
+        maxMoveTime.reset();
+        lastDepthReached = 0;
+        lastMoveTime = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d moves, %d nodes, %d leaves, %d cutoffs, %.1f%% table hits, %.1f us per move",
+                             getMoves(), getNodesVisited(), getLeafEvaluations(), getCutoffs(),
+                             100 * getTranspositionHitRate(), getAverageMoveTimeMicros());
+    }
+}
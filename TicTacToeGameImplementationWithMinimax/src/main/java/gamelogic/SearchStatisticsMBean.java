@@ -0,0 +1,83 @@
+package gamelogic;
+
+/**
+ * The counters of the searches of the AI player, as published through JMX, see {@link SearchStatistics}
+ * @author NkolasN
+ */
+public interface SearchStatisticsMBean {
+
+    /**
+     * @return the number of searches which completed, one per move played by the AI
+     */
+    long getMoves();
+
+    /**
+     * @return the number of positions visited by all the threads of every search
+     */
+    long getNodesVisited();
+
+    /**
+     * @return the number of positions scored by the evaluation function
+     */
+    long getLeafEvaluations();
+
+    /**
+     * @return the number of times the remaining moves of a position were pruned by alpha-beta
+     */
+    long getCutoffs();
+
+    /**
+     * @return the number of lookups which found the position in the transposition table
+     */
+    long getTranspositionHits();
+
+    /**
+     * @return the number of lookups which did not find the position in the transposition table
+     */
+    long getTranspositionMisses();
+
+    /**
+     * @return the share of the lookups which found the position in the transposition table, from 0 to 1
+     */
+    double getTranspositionHitRate();
+
+    /**
+     * @return the number of searches answered by the solution table
+     */
+    long getSolutionTableHits();
+
+    /**
+     * @return the greatest depth a search has looked ahead
+     */
+    long getMaxDepthReached();
+
+    /**
+     * @return the depth the last search looked ahead
+     */
+    long getLastDepthReached();
+
+    /**
+     * @return the time spent on every move, in milliseconds
+     */
+    long getTotalMoveTimeMillis();
+
+    /**
+     * @return the mean time spent on a move, in microseconds
+     */
+    double getAverageMoveTimeMicros();
+
+    /**
+     * @return the time spent on the last move, in microseconds
+     */
+    long getLastMoveTimeMicros();
+
+    /**
+     * @return the longest time spent on a move, in microseconds
+     */
+    long getMaxMoveTimeMicros();
+
+    /**
+     * Sets every counter back to zero
+     */
+    void reset();
+}
@@ -0,0 +1,188 @@
+package gamelogic;
+
+import constants.Constants;
+
+import java.util.Arrays;
+
+import static constants.Constants.Player.O;
+import static constants.Constants.Player.X;
+
+/**
+ * The solution of the whole standard 3x3 game: the result of a full-depth minimax search for every
+ * board, computed once and stored in a flat array indexed by the base-3 encoding of the board.
+ * <p>Every entry is a {@code short} holding the score of the board and the move the search
+ * would play, with the player to move given by the number of marks ('X' plays first). The
+ * table is built the first time it is used and answers every later lookup in constant time</p>
+ * @author NkolasN
+ */
+public final class SolutionTable {
+
+    /** Number of boards which can be encoded, 3^9 */
+    public static final int SIZE = 19683;
+
+    /** Entry of the boards which cannot be reached with 'X' playing first */
+    public static final short INVALID = Short.MIN_VALUE;
+
+    private static final int NO_MOVE = 0xF;
+    private static final int[] POWERS_OF_3 = {1, 3, 9, 27, 81, 243, 729, 2187, 6561};
+
+    private final short[] entries;
+    private final long buildTime;
+
+    private SolutionTable() {
+        long start = System.nanoTime();
+        entries = new short[SIZE];
+        Arrays.fill(entries, INVALID);
+
+        for (int code = 0; code < SIZE; code++) {
+            Position position = Position.fromCode(Rules.STANDARD, code, X);
+            int marksX = position.markCount(X);
+            int marksO = position.markCount(O);
+
+            if (marksX == marksO) {
+                solve(position);
+            } else if (marksX == marksO + 1) {
+                solve(Position.fromCode(Rules.STANDARD, code, O));
+            }
+        }
+
+        buildTime = System.nanoTime() - start;
+    }
+
+    private static class Holder {
+        private static final SolutionTable INSTANCE = new SolutionTable();
+    }
+
+    /**
+     * Returns the table, solving the game on the first call
+     * @return the solution table
+     */
+    public static SolutionTable getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Returns the minimax score of a position, filling in the entries of every position
+     * reachable from it. O is the maximising and X the minimising player and, on equal scores,
+     * the move on the lowest cell is kept, as in {@link Minimax}
+     * @param position the position to solve
+     * @return the score of the position
+     */
+    private int solve(Position position) {
+
+        int code = (int) position.code();
+        if (entries[code] != INVALID) {
+            return scoreOf(entries[code]);
+        }
+
+        if (position.isGameOver()) {
+            int score = Minimax.calculateScore(position);
+            entries[code] = pack(score, NO_MOVE);
+            return score;
+        }
+
+        boolean maximising = position.getTurn() == O;
+        int maxScore = maximising ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        int bestMove = NO_MOVE;
+
+        for (long moves = position.emptyCells(0); moves != 0; moves &= moves - 1) {
+            int cell = Long.numberOfTrailingZeros(moves);
+
+            position.make(cell);
+            int currentScore = solve(position);
+            position.unmake(cell);
+
+            if (maximising ? currentScore > maxScore : currentScore < maxScore) {
+                maxScore = currentScore;
+                bestMove = cell;
+            }
+        }
+
+        entries[code] = pack(maxScore, bestMove);
+        return maxScore;
+    }
+
+    /**
+     * Looks up a position
+     * @param position the position
+     * @return the packed entry of the position, or {@link #INVALID} if it is not a position of the
+     *         standard game or the player to move does not match the number of marks on the board
+     */
+    public short lookup(Position position) {
+        if (!position.getRules().equals(Rules.STANDARD)) {
+            return INVALID;
+        }
+
+        short entry = entries[(int) position.code()];
+        int marksX = position.markCount(X);
+        int marksO = position.markCount(O);
+
+        if ((marksX == marksO) != (position.getTurn() == X)) {
+            return INVALID;
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the entry of a board given by its code, see {@link Position#code()}
+     * @param code the base-3 encoding of the board
+     * @return the packed entry of the board
+     */
+    short entry(int code) {
+        return entries[code];
+    }
+
+    /**
+     * Returns the code of a board after a move
+     * @param code the base-3 encoding of the board
+     * @param cell the index of the empty cell marked
+     * @param player the player marking the cell
+     * @return the base-3 encoding of the board with the cell marked
+     */
+    static int play(int code, int cell, Constants.Player player) {
+        return code + (player == X ? 1 : 2) * POWERS_OF_3[cell];
+    }
+
+    private static short pack(int score, int move) {
+        return (short) (score << 4 | move);
+    }
+
+    /**
+     * @param entry a packed entry
+     * @return the minimax score of the board, positive if it favours 'O'
+     */
+    public static int scoreOf(short entry) {
+        return entry >> 4;
+    }
+
+    /**
+     * @param entry a packed entry
+     * @return the index of the cell to play, -1 if the game is over
+     */
+    public static int moveOf(short entry) {
+        int move = entry & 0xF;
+        return move == NO_MOVE ? -1 : move;
+    }
+
+    /**
+     * Returns the time it took to solve the game
+     * @return the build time in nanoseconds
+     */
+    public long getBuildTime() {
+        return buildTime;
+    }
+
+    /**
+     * Returns the memory held by the table
+     * @return the size of the entries in bytes
+     */
+    public long getMemoryFootprint() {
+        return (long) entries.length * Short.BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Solution table: %d boards, %d bytes, solved in %.1f ms",
+                             SIZE, getMemoryFootprint(), buildTime / 1e6);
+    }
+}
@@ -0,0 +1,195 @@
+package gamelogic;
+
+import constants.Constants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Saves what a {@link TranspositionTable} has learnt to a file, so that the searches of the next
+ * run start warm instead of from an empty table.
+ * <p>The file holds a header of {@value #HEADER_BYTES} bytes, recording the rules, the number of
+ * entries, a fingerprint of the random keys positions are hashed with and of the scores of the
+ * lines they were scored with, and a CRC-32 of the entries, then every entry of the table as two
+ * {@code long}s: the canonical hash of the position and the packed entry, with the score, depth,
+ * bound and best move. A snapshot is written to a temporary file which then replaces the previous
+ * one, so a run stopped while saving leaves the old snapshot</p>
+ * <p>A snapshot is mapped into memory to be loaded. One of another version, of other rules, hashed
+ * with other keys or scored with other line scores, or whose entries fail the CRC is ignored, and the table starts empty as it would
+ * without a snapshot. The snapshot of a game is kept in {@link Constants#TABLE_SNAPSHOT_DIRECTORY}</p>
+ * @author NkolasN
+ */
+public final class TableSnapshot {
+
+    static final int MAGIC = 0x54545453;
+    static final short VERSION = 2;
+    static final int HEADER_BYTES = 32;
+
+    private static final int ENTRY_BYTES = 16;
+
+    private TableSnapshot() {
+    }
+
+    /**
+     * @param rules the rules of a game
+     * @return the file of the snapshot of the game in {@link Constants#TABLE_SNAPSHOT_DIRECTORY}
+     */
+    public static Path pathFor(Rules rules) {
+        return Paths.get(Constants.TABLE_SNAPSHOT_DIRECTORY,
+                         rules.getWidth() + "x" + rules.getHeight() + "k" + rules.getK() + ".tt");
+    }
+
+    /**
+     * Writes the entries of a table to a snapshot, replacing the previous one. The table
+     * may be searched with while it is saved
+     * @param file the file of the snapshot, whose directory is created if needed
+     * @param rules the rules of the game the table holds positions of
+     * @param table the table to save
+     * @return the number of entries saved
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static int save(Path file, Rules rules, TranspositionTable table) throws IOException {
+        return save(file, rules, Minimax.SEQUENCE_SCORES, table);
+    }
+
+    /**
+     * Writes the entries of a table searched with other line scores than the default ones, see
+     * {@link #save(Path, Rules, TranspositionTable)} and {@link Minimax#setSequenceScores(int...)}
+     */
+    static int save(Path file, Rules rules, int[] sequenceScores, TranspositionTable table) throws IOException {
+        ByteBuffer entries = ByteBuffer.allocate(table.capacity() * ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            long entry = table.entryAt(slot);
+            long check = table.checkAt(slot);
+            // a slot changed by a search while it is read is skipped, so that the key and the
+            // entry saved were read together
+            if (entry != TranspositionTable.MISS && table.entryAt(slot) == entry) {
+                entries.putLong(check ^ entry).putLong(entry);
+            }
+        }
+        entries.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(entries.duplicate());
+        int count = entries.remaining() / ENTRY_BYTES;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC)
+              .putShort(VERSION)
+              .putShort((short) rules.getWidth())
+              .putShort((short) rules.getHeight())
+              .put((byte) rules.getK())
+              .put((byte) 0)
+              .putInt(count)
+              .putLong(fingerprint(rules, sequenceScores))
+              .putInt((int) crc.getValue());
+        header.clear();
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining() || entries.hasRemaining()) {
+                    channel.write(new ByteBuffer[]{header, entries});
+                }
+                channel.force(false);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        return count;
+    }
+
+    /**
+     * Adds the entries of a snapshot to a table. A missing snapshot, or one which does not match
+     * the rules or fails its checks, adds nothing
+     * @param file the file of the snapshot
+     * @param rules the rules of the game the table holds positions of
+     * @param table the table to fill
+     * @return the number of entries read from the snapshot, 0 for a cold start
+     */
+    public static int load(Path file, Rules rules, TranspositionTable table) {
+        return load(file, rules, Minimax.SEQUENCE_SCORES, table);
+    }
+
+    /**
+     * Adds the entries of a snapshot to a table searched with other line scores than the default
+     * ones, see {@link #load(Path, Rules, TranspositionTable)} and {@link Minimax#setSequenceScores(int...)}
+     */
+    static int load(Path file, Rules rules, int[] sequenceScores, TranspositionTable table) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > HEADER_BYTES + (long) Integer.MAX_VALUE / ENTRY_BYTES * ENTRY_BYTES) {
+                throw new IOException("Invalid size " + size);
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION) {
+                throw new IOException("Not a snapshot of version " + VERSION);
+            }
+            if (buffer.getShort(6) != rules.getWidth() || buffer.getShort(8) != rules.getHeight()
+                    || buffer.get(10) != rules.getK()) {
+                throw new IOException("Snapshot of other rules than " + rules);
+            }
+            int count = buffer.getInt(12);
+            if (count < 0 || size != HEADER_BYTES + (long) count * ENTRY_BYTES) {
+                throw new IOException("Truncated snapshot");
+            }
+            if (buffer.getLong(16) != fingerprint(rules, sequenceScores)) {
+                throw new IOException("Snapshot of positions hashed with other keys or scored with other line scores");
+            }
+
+            ByteBuffer entries = buffer.duplicate();
+            entries.position(HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(entries);
+            if ((int) crc.getValue() != buffer.getInt(24)) {
+                throw new IOException("Snapshot fails its CRC");
+            }
+
+            for (int offset = HEADER_BYTES; offset < size; offset += ENTRY_BYTES) {
+                long entry = buffer.getLong(offset + 8);
+                if (entry != TranspositionTable.MISS) {
+                    table.store(buffer.getLong(offset), entry);
+                }
+            }
+            return count;
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Snapshot " + file + " not used: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Folds the random keys positions are hashed with and the scores of the lines into one
+     * number, which changes if the keys or the scores ever do
+     */
+    private static long fingerprint(Rules rules, int[] sequenceScores) {
+        long fingerprint = 0;
+        for (long[] keys : rules.zobrist) {
+            for (long key : keys) {
+                fingerprint = fingerprint * 31 + key;
+            }
+        }
+        for (int score : sequenceScores) {
+            fingerprint = fingerprint * 31 + score;
+        }
+        return fingerprint;
+    }
+}
@@ -0,0 +1,605 @@
+package gamelogic;
+
+import constants.Constants;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+import static constants.Constants.Player.O;
+import static constants.Constants.Player.X;
+
+/**
+ * The perfect play of a whole m,n,k game, solved by retrograde analysis into a file which is
+ * mapped into memory rather than loaded on the heap.
+ * <p>The boards with the same number of marks form a layer, and every move adds a mark, so a layer
+ * only depends on the layer after it: the full boards are solved first, then every layer from the one
+ * after it, back to the empty board. Within a layer a board is numbered by the rank of its marked cells
+ * among all the sets of that many cells, then by the rank of the cells of 'X' among them, which gives
+ * every board 'X' can reach playing first an index of its own and leaves no gaps. Only the canonical
+ * board of every set of symmetric boards is solved, the one whose marks read as the smallest numbers,
+ * and a lookup turns the board into its canonical form first</p>
+ * <p>Every entry is a {@code short}: whether the player to move wins, loses or draws, in how many
+ * plies the game ends with perfect play, the fastest win or the slowest loss, and the move to play.
+ * The file starts with a header of {@value #HEADER_BYTES} bytes recording the rules and the next layer
+ * to solve, which is only updated once a layer is on disk, so an interrupted generation resumes at the
+ * layer it was solving. The file of a game is looked for in {@link Constants#TABLEBASE_DIRECTORY}</p>
+ * @author NkolasN
+ */
+public final class Tablebase implements Closeable {
+
+    /** Entry of the boards which are not in the tablebase */
+    public static final short UNSOLVED = 0;
+
+    /** Results of the player to move */
+    public static final int DRAW = 1, WIN = 2, LOSS = 3;
+
+    /** The score of a win on the spot, a win in n plies scoring n less */
+    public static final int WIN_SCORE = 1_000_000;
+
+    static final int MAGIC = 0x54545442;
+    static final short VERSION = 1;
+    static final int HEADER_BYTES = 64;
+
+    private static final int MAX_CELLS = 30;
+    private static final int NO_MOVE = 0xFF;
+    private static final int CHUNK_BYTES = 1 << 30;
+    private static final long BLOCK = 4096;
+    private static final ConcurrentMap<Rules, Optional<Tablebase>> OPENED = new ConcurrentHashMap<>();
+
+    private final Rules rules;
+    private final int cells;
+    private final int symmetries;
+    private final int[] lineMasks;
+    private final int[] symmetryTables;
+    private final long[][] binomials;
+    private final long[] layerOffsets;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+
+    private Tablebase(Rules rules, FileChannel channel, boolean writable) throws IOException {
+        this.rules = rules;
+        this.cells = rules.getCells();
+        this.symmetries = rules.getSymmetryCount();
+        this.channel = channel;
+
+        int[][] lines = rules.getLines();
+        lineMasks = new int[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            for (int cell : lines[i]) {
+                lineMasks[i] |= 1 << cell;
+            }
+        }
+
+        /* the image of every byte of a mask through every symmetry, to move a whole mask in four lookups */
+        symmetryTables = new int[symmetries * 4 * 256];
+        for (int s = 0; s < symmetries; s++) {
+            for (int b = 0; b < 4; b++) {
+                for (int value = 0; value < 256; value++) {
+                    int image = 0;
+                    for (int bit = 0; bit < 8; bit++) {
+                        int cell = b * 8 + bit;
+                        if ((value >>> bit & 1) != 0 && cell < cells) {
+                            image |= 1 << rules.apply(s, cell);
+                        }
+                    }
+                    symmetryTables[(s * 4 + b) * 256 + value] = image;
+                }
+            }
+        }
+
+        binomials = new long[cells + 1][cells + 2];
+        for (int n = 0; n <= cells; n++) {
+            binomials[n][0] = 1;
+            for (int k = 1; k <= n; k++) {
+                binomials[n][k] = binomials[n - 1][k - 1] + binomials[n - 1][k];
+            }
+        }
+
+        layerOffsets = new long[cells + 2];
+        for (int n = 0; n <= cells; n++) {
+            layerOffsets[n + 1] = layerOffsets[n] + layerSize(n);
+        }
+
+        long bytes = HEADER_BYTES + 2 * layerOffsets[cells + 1];
+        chunks = new MappedByteBuffer[(int) ((bytes + CHUNK_BYTES - 1) / CHUNK_BYTES)];
+        for (int i = 0; i < chunks.length; i++) {
+            long start = (long) i * CHUNK_BYTES;
+            chunks[i] = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                                    start, Math.min(CHUNK_BYTES, bytes - start));
+        }
+    }
+
+    /**
+     * Returns the tablebase of a game, opening its file in {@link Constants#TABLEBASE_DIRECTORY}
+     * on the first call
+     * @param rules the rules of the game
+     * @return the tablebase, null if there is no complete tablebase of the game
+     */
+    public static Tablebase forRules(Rules rules) {
+        return OPENED.computeIfAbsent(rules, r -> {
+            Path file = Paths.get(Constants.TABLEBASE_DIRECTORY, fileName(r));
+            if (r.getCells() > MAX_CELLS || !Files.isRegularFile(file)) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(open(file));
+            } catch (IOException e) {
+                System.err.println("Tablebase " + file + " not used: " + e.getMessage());
+                return Optional.empty();
+            }
+        }).orElse(null);
+    }
+
+    /**
+     * @param rules the rules of a game
+     * @return the name of the file of the tablebase of the game
+     */
+    public static String fileName(Rules rules) {
+        return rules.getWidth() + "x" + rules.getHeight() + "k" + rules.getK() + ".tb";
+    }
+
+    /**
+     * Opens a complete tablebase for lookups
+     * @param file the file of the tablebase
+     * @return the tablebase
+     * @throws IOException if the file cannot be read, is not a tablebase or is not complete
+     */
+    public static Tablebase open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            Header header = Header.read(channel);
+            if (header.nextLayer >= 0) {
+                throw new IOException("Tablebase not complete, layer " + header.nextLayer + " still to solve");
+            }
+            return new Tablebase(header.rules, channel, false);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Solves a game into a tablebase file, or carries on solving it from the layer an earlier
+     * generation was interrupted at
+     * @param file the file of the tablebase, created if it does not exist
+     * @param rules the rules of the game, at most {@value #MAX_CELLS} cells
+     * @param threads the number of threads solving each layer
+     * @param progress called with every layer once it is on disk
+     * @throws IOException if the file cannot be written or is the tablebase of another game
+     */
+    public static void generate(Path file, Rules rules, int threads, IntConsumer progress) throws IOException {
+        if (rules.getCells() > MAX_CELLS) {
+            throw new IllegalArgumentException("Tablebases hold boards of up to " + MAX_CELLS + " cells, given " + rules);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            int nextLayer = rules.getCells();
+            if (channel.size() == 0) {
+                new Header(rules, nextLayer).write(channel);
+            } else {
+                Header header = Header.read(channel);
+                if (!header.rules.equals(rules)) {
+                    throw new IOException(file + " is the tablebase of " + header.rules + ", not " + rules);
+                }
+                nextLayer = header.nextLayer;
+            }
+
+            Tablebase tablebase = new Tablebase(rules, channel, true);
+            for (int layer = nextLayer; layer >= 0; layer--) {
+                tablebase.solveLayer(layer, threads);
+                for (MappedByteBuffer chunk : tablebase.chunks) {
+                    chunk.force();
+                }
+                new Header(rules, layer - 1).write(channel);
+                channel.force(true);
+                progress.accept(layer);
+            }
+        }
+    }
+
+    /**
+     * Solves every canonical board of a layer, sharing out blocks of sets of marked cells between threads.
+     * Whatever a thread fails with, errors included, stops the others and is thrown once they are done,
+     * so that a layer is never marked solved with blocks missing
+     */
+    private void solveLayer(int layer, int threads) throws IOException {
+        long sets = binomials[cells][layer];
+        AtomicLong nextBlock = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    for (long start; failure.get() == null && (start = nextBlock.getAndAdd(BLOCK)) < sets; ) {
+                        solveBlock(layer, start, Math.min(sets, start + BLOCK));
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "tablebase-" + t);
+            workers[t].start();
+        }
+
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Tablebase generation interrupted", e);
+        }
+        Throwable cause = failure.get();
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        if (cause != null) {
+            throw new IOException("Tablebase layer " + layer + " failed", cause);
+        }
+    }
+
+    private void solveBlock(int layer, long from, long to) {
+        int marksX = (layer + 1) / 2;
+        long orders = binomials[layer][marksX];
+        int occupied = unrankSet(from, layer);
+
+        for (long rank = from; rank < to; rank++, occupied = nextSet(occupied)) {
+            int sub = (1 << marksX) - 1;
+
+            for (long order = 0; order < orders; order++, sub = nextSet(sub)) {
+                int x = deposit(sub, occupied);
+                int o = occupied & ~x;
+                if (canonicalSymmetry(x, o) < 0) {
+                    continue;
+                }
+                write(layerOffsets[layer] + rank * orders + order, solve(x, o, layer));
+            }
+        }
+    }
+
+    /**
+     * Solves a board from the entries of the boards after each of its moves
+     */
+    private short solve(int x, int o, int marks) {
+        boolean xToMove = (marks & 1) == 0;
+        int mover = xToMove ? x : o;
+        int opponent = xToMove ? o : x;
+
+        if (hasLine(opponent)) {
+            return pack(LOSS, 0, NO_MOVE);
+        }
+        if (hasLine(mover)) {
+            return pack(WIN, 0, NO_MOVE);
+        }
+        if (marks == cells) {
+            return pack(DRAW, 0, NO_MOVE);
+        }
+
+        int best = 0;
+        int bestMove = NO_MOVE;
+        for (int empty = ~(x | o) & (int) ((1L << cells) - 1); empty != 0; empty &= empty - 1) {
+            int bit = empty & -empty;
+            short child = lookup(xToMove ? x | bit : x, xToMove ? o : o | bit);
+            int result = resultOf(child) == WIN ? LOSS : resultOf(child) == LOSS ? WIN : DRAW;
+            int entry = pack(result, pliesOf(child) + 1, Integer.numberOfTrailingZeros(bit));
+
+            if (bestMove == NO_MOVE || rank(entry) > rank(best)) {
+                best = entry;
+                bestMove = Integer.numberOfTrailingZeros(bit);
+            }
+        }
+        return (short) best;
+    }
+
+    /**
+     * Orders entries from the slowest loss to the fastest win
+     */
+    private static int rank(int entry) {
+        int result = resultOf((short) entry);
+        int plies = pliesOf((short) entry);
+        return result == WIN ? 2000 - plies : result == DRAW ? 1000 : plies;
+    }
+
+    /**
+     * Looks up a position
+     * @param position the position
+     * @return the entry of the position, with its move on the board of the position, or
+     *         {@link #UNSOLVED} if the position is not one of the game or the player to move
+     *         does not match the number of marks on the board
+     */
+    public short probe(Position position) {
+        if (!position.getRules().equals(rules)) {
+            return UNSOLVED;
+        }
+
+        int x = 0;
+        int o = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (position.isMarkedBy(cell, X)) {
+                x |= 1 << cell;
+            } else if (position.isMarkedBy(cell, O)) {
+                o |= 1 << cell;
+            }
+        }
+
+        int marksX = Integer.bitCount(x);
+        int marksO = Integer.bitCount(o);
+        if (marksX != marksO && marksX != marksO + 1 || (marksX == marksO) != (position.getTurn() == X)) {
+            return UNSOLVED;
+        }
+
+        int symmetry = Math.max(0, ~canonicalSymmetry(x, o));
+        short entry = lookup(x, o);
+        int move = entry & 0xFF;
+        return move == NO_MOVE ? entry : (short) (entry & ~0xFF | rules.invert(symmetry, move));
+    }
+
+    /**
+     * Reads the entry of a board, in the frame of its canonical board
+     */
+    private short lookup(int x, int o) {
+        int symmetry = canonicalSymmetry(x, o);
+        if (symmetry < 0) {
+            symmetry = ~symmetry;
+            int canonicalX = transform(x, symmetry);
+            o = transform(o, symmetry);
+            x = canonicalX;
+        }
+        return read(indexOf(x, o));
+    }
+
+    /**
+     * Finds the symmetry turning a board into its canonical board
+     * @return the one's complement of the symmetry, or a non negative number if the board is canonical
+     */
+    private int canonicalSymmetry(int x, int o) {
+        long least = (long) x << 32 | o & 0xFFFFFFFFL;
+        int symmetry = 0;
+
+        for (int s = 1; s < symmetries; s++) {
+            long image = (long) transform(x, s) << 32 | transform(o, s) & 0xFFFFFFFFL;
+            if (image < least) {
+                least = image;
+                symmetry = s;
+            }
+        }
+        return symmetry == 0 ? 0 : ~symmetry;
+    }
+
+    private int transform(int mask, int symmetry) {
+        int base = symmetry * 4 * 256;
+        return symmetryTables[base + (mask & 0xFF)]
+               | symmetryTables[base + 256 + (mask >>> 8 & 0xFF)]
+               | symmetryTables[base + 512 + (mask >>> 16 & 0xFF)]
+               | symmetryTables[base + 768 + (mask >>> 24)];
+    }
+
+    private boolean hasLine(int mask) {
+        for (int line : lineMasks) {
+            if ((mask & line) == line) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the index of a board whose number of marks of 'X' matches 'X' playing first
+     */
+    long indexOf(int x, int o) {
+        int occupied = x | o;
+        int marks = Integer.bitCount(occupied);
+        return layerOffsets[marks] + rankSet(occupied) * binomials[marks][(marks + 1) / 2]
+               + rankSet(compress(x, occupied));
+    }
+
+    /**
+     * @return the number of boards of a layer 'X' can reach playing first
+     */
+    private long layerSize(int marks) {
+        return binomials[cells][marks] * binomials[marks][(marks + 1) / 2];
+    }
+
+    /**
+     * Ranks a set of cells among the sets of as many cells, in increasing order of their masks
+     */
+    long rankSet(int set) {
+        long rank = 0;
+        int i = 1;
+        for (int m = set; m != 0; m &= m - 1, i++) {
+            rank += binomials[Integer.numberOfTrailingZeros(m)][i];
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the set of cells of a rank among the sets of as many cells, see {@link #rankSet(int)}
+     */
+    int unrankSet(long rank, int size) {
+        int set = 0;
+        int cell = cells - 1;
+        for (int i = size; i > 0; i--) {
+            while (binomials[cell][i] > rank) {
+                cell--;
+            }
+            set |= 1 << cell;
+            rank -= binomials[cell][i];
+            cell--;
+        }
+        return set;
+    }
+
+    /**
+     * Returns the next larger mask with as many bits set
+     */
+    static int nextSet(int set) {
+        if (set == 0) {
+            return 0;
+        }
+        int lowest = set & -set;
+        int ripple = set + lowest;
+        return ripple | ((set ^ ripple) >>> 2) / lowest;
+    }
+
+    /**
+     * Spreads the low bits of a mask over the set bits of another, lowest first
+     */
+    private static int deposit(int bits, int over) {
+        int result = 0;
+        for (int m = over, i = 0; m != 0; m &= m - 1, i++) {
+            if ((bits >>> i & 1) != 0) {
+                result |= m & -m;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gathers the bits of a mask found at the set bits of another into the low bits, lowest first
+     */
+    private static int compress(int bits, int over) {
+        int result = 0;
+        for (int m = over, i = 0; m != 0; m &= m - 1, i++) {
+            if ((bits & m & -m) != 0) {
+                result |= 1 << i;
+            }
+        }
+        return result;
+    }
+
+    private short read(long index) {
+        long offset = HEADER_BYTES + 2 * index;
+        return chunks[(int) (offset / CHUNK_BYTES)].getShort((int) (offset % CHUNK_BYTES));
+    }
+
+    private void write(long index, short entry) {
+        long offset = HEADER_BYTES + 2 * index;
+        chunks[(int) (offset / CHUNK_BYTES)].putShort((int) (offset % CHUNK_BYTES), entry);
+    }
+
+    private static short pack(int result, int plies, int move) {
+        return (short) (result << 14 | plies << 8 | move);
+    }
+
+    /**
+     * @param entry an entry
+     * @return {@link #WIN}, {@link #LOSS} or {@link #DRAW} for the player to move, 0 if unsolved
+     */
+    public static int resultOf(short entry) {
+        return entry >>> 14 & 3;
+    }
+
+    /**
+     * @param entry an entry
+     * @return the number of plies to the end of the game with perfect play
+     */
+    public static int pliesOf(short entry) {
+        return entry >>> 8 & 0x3F;
+    }
+
+    /**
+     * @param entry an entry
+     * @return the index of the cell to play, -1 if the game is over
+     */
+    public static int moveOf(short entry) {
+        int move = entry & 0xFF;
+        return move == NO_MOVE ? -1 : move;
+    }
+
+    /**
+     * @param entry an entry
+     * @return the score of the position for the player to move: {@link #WIN_SCORE} less the plies
+     *         to the end for a win, the opposite for a loss, 0 for a draw
+     */
+    public static int scoreOf(short entry) {
+        int result = resultOf(entry);
+        return result == WIN ? WIN_SCORE - pliesOf(entry) : result == LOSS ? pliesOf(entry) - WIN_SCORE : 0;
+    }
+
+    /**
+     * @return the rules of the game of the tablebase
+     */
+    public Rules getRules() {
+        return rules;
+    }
+
+    /**
+     * @return the number of entries of the tablebase, canonical or not
+     */
+    public long size() {
+        return layerOffsets[cells + 1];
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+
+    /**
+     * The header of a tablebase file
+     */
+    private static final class Header {
+
+        final Rules rules;
+        final int nextLayer;
+
+        Header(Rules rules, int nextLayer) {
+            this.rules = rules;
+            this.nextLayer = nextLayer;
+        }
+
+        static Header read(FileChannel channel) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+                // read until the header is complete or the file ends
+            }
+            if (buffer.hasRemaining() || buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION) {
+                throw new IOException("Not a tablebase of version " + VERSION);
+            }
+
+            try {
+                Rules rules = new Rules(buffer.getShort(6) & 0xFFFF, buffer.getShort(8) & 0xFFFF, buffer.get(10));
+                if (rules.getCells() > MAX_CELLS) {
+                    throw new IOException("Invalid board size " + rules);
+                }
+                return new Header(rules, buffer.getInt(12));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid rules: " + e.getMessage());
+            }
+        }
+
+        void write(FileChannel channel) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC)
+                  .putShort(VERSION)
+                  .putShort((short) rules.getWidth())
+                  .putShort((short) rules.getHeight())
+                  .put((byte) rules.getK())
+                  .put((byte) 0)
+                  .putInt(nextLayer);
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, buffer.position());
+            }
+        }
+    }
+}
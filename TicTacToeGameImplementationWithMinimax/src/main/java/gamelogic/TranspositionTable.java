@@ -0,0 +1,170 @@
+package gamelogic;
+
+import java.util.Arrays;
+
+/**
+ * A bounded table of search results keyed by the hash of the canonical form of a position.
+ * <p>Every entry is packed into a {@code long} holding the score, the depth it was searched to,
+ * the type of bound the score is and the best move in canonical orientation. The table is split
+ * into buckets of two slots: the first keeps the deepest result seen and the second always takes
+ * the newest one, so deep results survive while recent ones are still cached</p>
+ * <p>Every slot is a pair of {@code long}s in a single array: the entry itself and the key XORed with
+ * the entry. A probe only accepts a slot whose two words XOR back to the key, so the table can be
+ * shared by searches running on several threads without any locking: a slot half written by one
+ * thread while another reads it fails the check and is taken as a miss, and two threads storing into
+ * the same slot at once only lose one of the results</p>
+ * @author NkolasN
+ */
+public class TranspositionTable {
+
+    /** The score is the exact value of the position */
+    public static final int EXACT = 1;
+
+    /** The score is a lower bound, the search failed high */
+    public static final int LOWER = 2;
+
+    /** The score is an upper bound, the search failed low */
+    public static final int UPPER = 3;
+
+    /** Returned by {@link #probe(long)} when the position is not in the table */
+    public static final long MISS = 0;
+
+    private final long[] slots;
+    private final int mask;
+
+    /**
+     * Creates a table with at least the given number of slots
+     * @param size the minimum number of slots, rounded up to a power of two
+     */
+    public TranspositionTable(int size) {
+        if (size < 2) {
+            throw new IllegalArgumentException("Table must hold at least two entries, given " + size);
+        }
+        int capacity = Integer.highestOneBit(size - 1) << 1;
+        slots = new long[capacity << 1];
+        mask = capacity - 2;
+    }
+
+    /**
+     * Looks up a position
+     * @param key the canonical hash of the position
+     * @return the packed entry stored for the position, {@link #MISS} if there is none
+     */
+    public long probe(long key) {
+        int slot = ((int) key & mask) << 1;
+
+        for (int i = slot; i < slot + 4; i += 2) {
+            long entry = slots[i + 1];
+            if (entry != MISS && (slots[i] ^ entry) == key) {
+                return entry;
+            }
+        }
+        return MISS;
+    }
+
+    /**
+     * Stores the result of a search
+     * @param key the canonical hash of the position
+     * @param score the score of the position for the player to move
+     * @param depth the depth the position was searched to
+     * @param bound {@link #EXACT}, {@link #LOWER} or {@link #UPPER}
+     * @param move the best move in canonical orientation, -1 if there is none
+     */
+    public void store(long key, int score, int depth, int bound, int move) {
+        store(key, pack(score, depth, bound, move));
+    }
+
+    /**
+     * Stores a packed entry, in the slot {@link #store(long, int, int, int, int)} would choose
+     * @param key the canonical hash of the position
+     * @param entry the packed entry, never {@link #MISS}
+     */
+    void store(long key, long entry) {
+        int slot = ((int) key & mask) << 1;
+        long deepest = slots[slot + 1];
+
+        if (deepest != MISS && (slots[slot] ^ deepest) != key && depthOf(entry) < depthOf(deepest)) {
+            slot += 2;
+        }
+        slots[slot] = key ^ entry;
+        slots[slot + 1] = entry;
+    }
+
+    /**
+     * Empties the table
+     */
+    public void clear() {
+        Arrays.fill(slots, MISS);
+    }
+
+    /**
+     * Returns the number of slots of the table
+     * @return the capacity of the table
+     */
+    public int capacity() {
+        return slots.length >>> 1;
+    }
+
+    /**
+     * Returns the entry held by a slot
+     * @param slot the index of the slot, below {@link #capacity()}
+     * @return the packed entry, {@link #MISS} if the slot is empty
+     */
+    long entryAt(int slot) {
+        return slots[(slot << 1) + 1];
+    }
+
+    /**
+     * Returns the first word of a slot, the key of its entry XORed with the entry. The key is this
+     * word XORed with the entry read by {@link #entryAt(int)}, both read once, so that a slot written
+     * by another thread in between never pairs the key of one entry with another entry
+     * @param slot the index of the slot, below {@link #capacity()}
+     * @return the key XORed with the entry
+     */
+    long checkAt(int slot) {
+        return slots[slot << 1];
+    }
+
+    /**
+     * Packs the fields of an entry; the bound is never 0, so no entry equals {@link #MISS}
+     */
+    static long pack(int score, int depth, int bound, int move) {
+        return (score & 0xFFFFFFFFL)
+             | (long) (depth & 0xFF) << 32
+             | (long) bound << 40
+             | (long) (move & 0xFFFF) << 48;
+    }
+
+    /**
+     * @param entry a packed entry
+     * @return the score of the entry
+     */
+    public static int scoreOf(long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * @param entry a packed entry
+     * @return the depth the entry was searched to
+     */
+    public static int depthOf(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    /**
+     * @param entry a packed entry
+     * @return {@link #EXACT}, {@link #LOWER} or {@link #UPPER}
+     */
+    public static int boundOf(long entry) {
+        return (int) (entry >>> 40) & 0x3;
+    }
+
+    /**
+     * @param entry a packed entry
+     * @return the best move in canonical orientation, -1 if there is none
+     */
+    public static int moveOf(long entry) {
+        int move = (int) (entry >>> 48) & 0xFFFF;
+        return move == 0xFFFF ? -1 : move;
+    }
+}
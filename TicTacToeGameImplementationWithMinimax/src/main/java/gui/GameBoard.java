@@ -1,30 +1,47 @@
 package gui;
 
+import gamelogic.Coordinate;
+import gamelogic.Rules;
 import gamelogic.State;
 import constants.Constants;
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import static constants.Constants.CELL_SIZE;
 import static constants.Constants.GameState.*;
+import static constants.Constants.MAX_BOARD_LENGTH;
 
 /**
  * This class draws the game board based on the state of the game
+ * <p>The grid and the four glyphs, 'X' and 'O' in white and in red, are drawn once into images
+ * compatible with the screen, shared by every board of the same size, so painting only copies
+ * images. Only the cells within the clip are painted, and a move repaints only its cell, see
+ * {@link #repaintMove(Coordinate)}</p>
  * @author NkolasN
  */
 class GameBoard extends JPanel {
 
+    private static final Map<Long, Sprites> SPRITES = new HashMap<>();
+
     private State state;
     private JLabel gameStatus;
+    private boolean thinking;
+    private String searchStatistics = "";
 
 
     public GameBoard(State state, JLabel gameStatus){
         this.state = state;
         this.gameStatus = gameStatus;
+        setBackground(Color.BLACK);
     }
 
 
     /**
-     * Draws the game cells and updates the game status label with the current status
+     * Draws the game cells within the clip and updates the game status label with the current status
      * of the game.
      * @param g
      */
@@ -32,55 +49,108 @@ class GameBoard extends JPanel {
     public void paintComponent(Graphics g) {
 
         super.paintComponent(g);
-        setBackground(Color.BLACK);
-        g.setColor(Color.WHITE);
-        g.drawLine(0,100,300,100);
-        g.drawLine(0,200,300,200);
-        g.drawLine(100,300,100,0);
-        g.drawLine(200,300,200,0);
 
-        Graphics2D g2 = (Graphics2D) g;
-        g2.setStroke(new BasicStroke(8, BasicStroke.CAP_ROUND,
-                BasicStroke.JOIN_ROUND));
+        Rules rules = state.getRules();
+        int cellSize = cellSize(rules);
+        Sprites sprites = sprites(rules, cellSize);
+        g.drawImage(sprites.grid, 0, 0, null);
 
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        int firstRow = Math.max(0, clip.y / cellSize);
+        int lastRow = Math.min(rules.getHeight() - 1, (clip.y + clip.height - 1) / cellSize);
+        int firstColumn = Math.max(0, clip.x / cellSize);
+        int lastColumn = Math.min(rules.getWidth() - 1, (clip.x + clip.width - 1) / cellSize);
+
+        boolean[] winning = winningCells();
+        List<Coordinate> coordinates = state.getCoordinates();
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * rules.getWidth() + column;
+                Coordinate c = coordinates.get(cell);
+
+                if (c.isMarked()) {
+                    int glyph = (c.markedWith("X") ? Sprites.X : Sprites.O) + (winning != null && winning[cell] ? 1 : 0);
+                    g.drawImage(sprites.glyphs[glyph], column * cellSize, row * cellSize, null);
+                }
+            }
+        }
 
-        state.getCoordinates().stream().filter(c -> c.isMarked()).forEach(c -> {
+        updateStatus();
+    }
 
-            if (c.markedWith().equals("X")) {
 
-                if (state.getState() == X_WINS && state.getWinningPattern().contains(c)) {
-                    g2.setColor(Color.RED);
-                } else {
-                    g2.setColor(Color.WHITE);
+    /**
+     * Repaints the cell of a move, and the winning line if the move ended the game with a win
+     * @param move the cell just marked
+     */
+    public void repaintMove(Coordinate move) {
+        int cellSize = cellSize(state.getRules());
 
-                }
+        repaint(move.getY() * cellSize, move.getX() * cellSize, cellSize, cellSize);
+        if (state.getState() == X_WINS || state.getState() == O_WINS) {
+            for (Coordinate c : state.getWinningPattern()) {
+                repaint(c.getY() * cellSize, c.getX() * cellSize, cellSize, cellSize);
+            }
+        }
+        updateStatus();
+    }
 
-                int x0 = c.getY() * 100 + 16;
-                int y0 = c.getX() * 100 + 16;
 
-                int x1 = (c.getY() + 1) * 100 - 16;
-                int y1 = (c.getX() + 1) * 100 - 16;
-                g2.drawLine(x0, y0, x1, y1);
-                g2.drawLine(x1, y0, x0, y1);
+    /**
+     * Shows the status of the game, or that the AI player is thinking, in the status label
+     */
+    private void updateStatus() {
+        gameStatus.setText("Status: " + (thinking ? "Thinking..." : prettyFormatState(state.getState())) + searchStatistics);
+    }
 
 
-            } else if (c.markedWith().equals("O")) {
-                if (state.getState() == O_WINS && state.getWinningPattern().contains(c)) {
-                    g2.setColor(Color.RED);
-                } else {
-                    g2.setColor(Color.WHITE);
-                }
+    /**
+     * Flags the cells of the winning line
+     * @return a flag for every cell, true for the cells of the winning line, or null if nobody has won
+     */
+    private boolean[] winningCells() {
+        if (state.getState() != X_WINS && state.getState() != O_WINS) {
+            return null;
+        }
 
-                int x0 = c.getY() * 100 + (100 / 6);
-                int y0 = c.getX() * 100 + (100 / 6);
+        boolean[] winning = new boolean[state.getRules().getCells()];
+        for (Coordinate c : state.getWinningPattern()) {
+            winning[state.getRules().cellOf(c)] = true;
+        }
+        return winning;
+    }
 
-                g2.drawOval(x0, y0, 68, 68);
 
-            }
-        });
+    /**
+     * Returns the images a board is drawn with, drawing them the first time a board of this size is painted
+     * @param rules the rules giving the size of the board
+     * @param cellSize the side of a cell in pixels
+     * @return the images of the grid and of the glyphs
+     */
+    private Sprites sprites(Rules rules, int cellSize) {
+        long key = (long) rules.getWidth() << 40 | (long) rules.getHeight() << 20 | cellSize;
+        Sprites sprites = SPRITES.get(key);
+
+        if (sprites == null) {
+            sprites = new Sprites(getGraphicsConfiguration(), rules, cellSize);
+            SPRITES.put(key, sprites);
+        }
+        return sprites;
+    }
 
-          gameStatus.setText("Status: " + prettyFormatState(state.getState()));
 
+    /**
+     * Returns the size in pixels of the side of a cell, so that the board
+     * fits in {@link Constants#MAX_BOARD_LENGTH}
+     * @param rules the rules giving the size of the board
+     * @return the side of a cell in pixels
+     */
+    static int cellSize(Rules rules) {
+        return Math.min(CELL_SIZE, MAX_BOARD_LENGTH / Math.max(rules.getWidth(), rules.getHeight()));
     }
 
 
@@ -93,6 +163,27 @@ class GameBoard extends JPanel {
     }
 
 
+    /**
+     * Sets the figures of the last search of the AI player, shown after the status
+     * @param searchStatistics a short summary of the search, empty to show none
+     */
+    public void setSearchStatistics(String searchStatistics) {
+        this.searchStatistics = searchStatistics;
+        updateStatus();
+    }
+
+
+    /**
+     * Sets whether the AI player is searching for its move, which is shown in
+     * the status label instead of the game status
+     * @param thinking true while the AI player searches, false otherwise
+     */
+    public void setThinking(boolean thinking) {
+        this.thinking = thinking;
+        updateStatus();
+    }
+
+
     /**
      * Maps the game status to a string
      * @param state the internal game state
@@ -118,5 +209,68 @@ class GameBoard extends JPanel {
 
     }
 
-}
 
+
+    /**
+     * The images of a board of one size: the grid on the black background, and 'X' and 'O'
+     * in white and red on a transparent cell
+     */
+    private static class Sprites {
+
+        static final int X = 0;
+        static final int O = 2;
+
+        final Image grid;
+        final Image[] glyphs = new Image[4];
+
+        Sprites(GraphicsConfiguration configuration, Rules rules, int cellSize) {
+            int boardWidth = rules.getWidth() * cellSize;
+            int boardHeight = rules.getHeight() * cellSize;
+
+            BufferedImage gridImage = createImage(configuration, boardWidth, boardHeight, Transparency.OPAQUE);
+            Graphics2D g = gridImage.createGraphics();
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, boardWidth, boardHeight);
+            g.setColor(Color.WHITE);
+            for (int x = 1; x < rules.getHeight(); x++) {
+                g.drawLine(0, x * cellSize, boardWidth, x * cellSize);
+            }
+            for (int y = 1; y < rules.getWidth(); y++) {
+                g.drawLine(y * cellSize, boardHeight, y * cellSize, 0);
+            }
+            g.dispose();
+            grid = gridImage;
+
+            BasicStroke stroke = new BasicStroke(Math.max(2, cellSize * 8 / 100), BasicStroke.CAP_ROUND,
+                                                 BasicStroke.JOIN_ROUND);
+            for (int glyph = 0; glyph < glyphs.length; glyph++) {
+                BufferedImage image = createImage(configuration, cellSize, cellSize, Transparency.TRANSLUCENT);
+                g = image.createGraphics();
+                g.setStroke(stroke);
+                g.setColor(glyph % 2 == 0 ? Color.WHITE : Color.RED);
+
+                if (glyph < O) {
+                    int x0 = cellSize * 16 / 100;
+                    int x1 = cellSize - cellSize * 16 / 100;
+                    g.drawLine(x0, x0, x1, x1);
+                    g.drawLine(x1, x0, x0, x1);
+                } else {
+                    g.drawOval(cellSize / 6, cellSize / 6, cellSize * 68 / 100, cellSize * 68 / 100);
+                }
+                g.dispose();
+                glyphs[glyph] = image;
+            }
+        }
+
+        /**
+         * Creates an image in the format of the screen, so that drawing it is a plain copy
+         */
+        private static BufferedImage createImage(GraphicsConfiguration configuration, int width, int height, int transparency) {
+            if (configuration != null) {
+                return configuration.createCompatibleImage(width, height, transparency);
+            }
+            return new BufferedImage(width, height, transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB
+                                                                                       : BufferedImage.TYPE_INT_ARGB);
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package gui;
 
 import gamelogic.Coordinate;
+import gamelogic.Engine;
+import gamelogic.GameLog;
 import gamelogic.Minimax;
+import gamelogic.MonteCarloTreeSearch;
+import gamelogic.Ponderer;
+import gamelogic.Position;
+import gamelogic.Rules;
+import gamelogic.SearchResult;
 import gamelogic.State;
-import sun.audio.AudioPlayer;
-import sun.audio.AudioStream;
+import gamelogic.TableSnapshot;
 
 import javax.swing.*;
 import java.awt.*;
@@ -12,7 +18,15 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.io.InputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 import static constants.Constants.*;
@@ -24,23 +38,56 @@ import static constants.Constants.Player.X;
 /**
  * This class creates the JFrame, adds the game board, and updates
  * the state when a move is made
+ * <p>The AI player searches on a background thread, so the window keeps responding while
+ * it thinks. Clicks on the board are ignored until its move has been played, and restarting
+ * the game cancels the search</p>
+ * <p>With {@link constants.Constants#PONDER} the AI player also thinks while it is X's turn: it
+ * searches its reply to every move X can play, so the reply to the move clicked is usually
+ * ready at once. Restarting the game drops that work</p>
+ * <p>Every completed game is appended to the game log in {@link constants.Constants#GAME_LOG_DIRECTORY}</p>
  * @author NKolasN
  */
 public class Interface{
 
     private State state;
+    private Engine engine;
+    private ExecutorService searchExecutor;
+    private Ponderer ponderer;
+    private CompletableFuture<SearchResult> search;
+    private int searchGeneration;
+    private final ExecutorService gameLogExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "game-log");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private GameLog gameLog;
+    private boolean gameLogFailed;
     private JLabel gameStatus;
+    private MoveSound moveSound;
     GameBoard gameBoard;
     JFrame gameWindow;
     Container container;
 
     public Interface(){
+        this(Rules.STANDARD);
+    }
+
+    public Interface(Rules rules){
         gameWindow = new JFrame();
-        state = new State();
+        state = new State(rules);
+        engine = createEngine();
+        searchExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ai-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ponderer = new Ponderer(engine, searchExecutor, rules);
+        moveSound = new MoveSound("moveSound.wav");
         gameStatus = new JLabel();
         gameBoard = new GameBoard(state,gameStatus);
         container = gameWindow.getContentPane();;
         start();
+        startPondering(null);
     }
 
     /**
@@ -80,8 +127,11 @@ public class Interface{
         restartButton.addActionListener(new ActionListener() {
 
             public void actionPerformed(ActionEvent e) {
+                cancelSearch();
+                gameBoard.setSearchStatistics("");
                 state.reset();
-                gameWindow.repaint();
+                startPondering(null);
+                gameBoard.repaint();
             }
         });
 
@@ -91,7 +141,10 @@ public class Interface{
         container.add(p,BorderLayout.PAGE_END);
         gameWindow.pack();
         gameWindow.setTitle("Tic-Tac-Toe");
-        gameWindow.setSize(new Dimension(BOARD_LENGTH_HORIZONTAL ,BOARD_LENGTH_VERTICAL));
+        gameWindow.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        int cellSize = GameBoard.cellSize(state.getRules());
+        gameWindow.setSize(new Dimension(cellSize * state.getRules().getWidth(),
+                                         cellSize * state.getRules().getHeight() + STATUS_BAR_HEIGHT));
         gameWindow.setVisible(true);
         gameWindow.setResizable(false);
         gameBoard.addMouseListener(new MouseAdapter() {
@@ -99,22 +152,23 @@ public class Interface{
             public void mouseClicked(MouseEvent e) {
 
 
-                int selectedRow = e.getY() / 100;
-                int selectedColumn = e.getX() / 100;
+                int selectedRow = e.getY() / cellSize;
+                int selectedColumn = e.getX() / cellSize;
+
+                if (isSearching()) {
+                    return;
+                }
 
                 try {
                     if (state.getState() == ONGOING &&
-                            selectedRow >= 0 && selectedColumn >= 0 &&
+                            selectedRow >= 0 && selectedRow < state.getRules().getHeight() &&
+                            selectedColumn >= 0 && selectedColumn < state.getRules().getWidth() &&
                             !clickedOnMarked(new Coordinate(selectedRow,selectedColumn))) {
 
                         if (state.getTurn() == X) {
 
-                            InputStream in = getClass().getClassLoader().getResourceAsStream("moveSound.wav");
-                            AudioStream audioStream = new AudioStream(in);
-                            AudioPlayer.player.start(audioStream);
-                            AudioPlayer.player.stop(audioStream);
                             state.update(new Coordinate(selectedRow, selectedColumn),X, O);
-                            AudioPlayer.player.start(audioStream);
+                            moveSound.play();
 
                             GameState newState = state.gameEnded(new Coordinate(selectedRow,selectedColumn),X);
                             switch(newState){
@@ -123,14 +177,13 @@ public class Interface{
 
                             }
 
+                            if (state.getState() != ONGOING) {
+                                recordGame();
+                            }
+                            gameBoard.repaintMove(new Coordinate(selectedRow, selectedColumn));
+
                             if(!state.hasEnded()){
-                                Coordinate aiMove=(Coordinate)new Minimax(state).minimax(MINIMAX_DEPTH,O).get(1);
-                                state.update(aiMove, O, X);
-                                if(state.gameEnded(aiMove,O) == O_WINS) {
-                                    state.setEnded(O_WINS);
-                                } else if (state.gameEnded(aiMove,O) == DRAW) {
-                                    state.setEnded(DRAW);
-                                }
+                                startSearch(state.getRules().cellOf(new Coordinate(selectedRow, selectedColumn)));
                             }
 
 
@@ -141,13 +194,184 @@ public class Interface{
                     e1.printStackTrace();
                 }
                 gameBoard.setState(state);
-                gameBoard.repaint();
-                gameWindow.revalidate();
 
             }
         });
     }
 
+    /**
+     * Creates the AI player chosen in {@link constants.Constants#ENGINE}. The minimax search starts
+     * from the transposition table saved when the game was last closed, and saves it when it closes
+     * @return the minimax search, on every core, or the Monte Carlo tree search
+     */
+    private Engine createEngine() {
+        if (ENGINE == EngineType.MCTS) {
+            return new MonteCarloTreeSearch(state.getRules(), MCTS_PLAYOUTS, MCTS_TIME_MILLIS);
+        }
+
+        Minimax minimax = new Minimax(state);
+        minimax.setParallelism(SEARCH_THREADS, PARALLEL_MODE);
+        Path snapshot = TableSnapshot.pathFor(state.getRules());
+        minimax.loadTable(snapshot);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                minimax.saveTable(snapshot);
+            } catch (IOException e) {
+                System.err.println("Transposition table not saved: " + e);
+            }
+        }, "table-snapshot"));
+        return minimax;
+    }
+
+    /**
+     * Starts the search for the move of the AI player on the background thread, unless it has
+     * been found while pondering. The status shows that the AI is thinking until the move is
+     * played back on the event dispatch thread
+     * @param cell the index of the cell X has just marked
+     */
+    private void startSearch(int cell) {
+        Position position = Position.of(state, O);
+        int generation = ++searchGeneration;
+        long start = System.nanoTime();
+
+        gameBoard.setThinking(true);
+        search = ponderer.reply(position, cell);
+        boolean pondered = search.isDone();
+        search.whenComplete((result, failure) -> {
+            if (failure != null) {
+                Throwable cause = failure instanceof CompletionException && failure.getCause() != null ?
+                                  failure.getCause() : failure;
+                if (!(cause instanceof CancellationException)) {
+                    // the game was not restarted, so the search itself failed
+                    SwingUtilities.invokeLater(() -> searchFailed(cause, generation));
+                }
+                return;
+            }
+            String statistics = !SHOW_SEARCH_STATISTICS ? "" : pondered ? " (pondered)" :
+                    String.format(" (%,d nodes, %.1f ms)", engine.getNodesVisited(), (System.nanoTime() - start) / 1e6);
+            SwingUtilities.invokeLater(() -> playAiMove(result, statistics, generation));
+        });
+    }
+
+    /**
+     * Starts thinking about the replies to the moves X can play, when pondering is on and the
+     * game goes on
+     * @param previous the last search of the AI player, whose principal variation gives the move
+     *                 of X searched first, or null
+     */
+    private void startPondering(SearchResult previous) {
+        if (!PONDER || state.getState() != ONGOING) {
+            return;
+        }
+
+        int expectedCell = -1;
+        if (previous != null) {
+            List<Coordinate> principalVariation = previous.getPrincipalVariation();
+            if (principalVariation.size() > 1) {
+                expectedCell = state.getRules().cellOf(principalVariation.get(1));
+            }
+        }
+        ponderer.ponder(Position.of(state, X), expectedCell);
+    }
+
+    /**
+     * Plays the move found by the AI player, unless the game has been restarted
+     * since the search started, then ponders on the reply of X
+     * @param result the search which found the move of the AI player
+     * @param statistics the figures of the search shown in the status, empty to show none
+     * @param generation the number of the search which found the move
+     */
+    private void playAiMove(SearchResult result, String statistics, int generation) {
+        if (generation != searchGeneration) {
+            return;
+        }
+
+        Coordinate aiMove = result.getMove();
+        search = null;
+        gameBoard.setSearchStatistics(statistics);
+        gameBoard.setThinking(false);
+        state.update(aiMove, O, X);
+        if(state.gameEnded(aiMove,O) == O_WINS) {
+            state.setEnded(O_WINS);
+        } else if (state.gameEnded(aiMove,O) == DRAW) {
+            state.setEnded(DRAW);
+        }
+
+        if (state.getState() != ONGOING) {
+            recordGame();
+        }
+        startPondering(result);
+
+        gameBoard.repaintMove(aiMove);
+    }
+
+    /**
+     * Stops showing that the AI player is thinking once its search has failed, unless the game
+     * has been restarted since the search started. The game cannot go on, as it is the turn of
+     * the AI player, so the status asks for a restart
+     * @param failure why the search failed
+     * @param generation the number of the search which failed
+     */
+    private void searchFailed(Throwable failure, int generation) {
+        if (generation != searchGeneration) {
+            return;
+        }
+
+        search = null;
+        String reason = failure.getMessage() == null ? failure.getClass().getSimpleName()
+                                                     : failure.getClass().getSimpleName() + " " + failure.getMessage();
+        gameBoard.setSearchStatistics(" (the AI player failed: " + reason + ", restart the game)");
+        gameBoard.setThinking(false);
+    }
+
+    /**
+     * Appends the game which has just ended to the game log, opening the log for the first game.
+     * The moves are copied on the event dispatch thread and written on a thread of their own, which
+     * alone uses the log, so that the window never waits for the disk. If the log cannot be written,
+     * games stop being recorded but can still be played
+     */
+    private void recordGame() {
+        Rules rules = state.getRules();
+        int[] moves = state.getMoves();
+        GameState outcome = state.getState();
+
+        gameLogExecutor.execute(() -> {
+            if (gameLogFailed) {
+                return;
+            }
+
+            try {
+                if (gameLog == null) {
+                    gameLog = new GameLog(Paths.get(GAME_LOG_DIRECTORY), rules);
+                }
+                gameLog.append(moves, moves.length, outcome);
+                gameLog.flush();
+            } catch (IOException e) {
+                System.err.println("Games are no longer recorded: " + e);
+                gameLogFailed = true;
+            }
+        });
+    }
+
+    /**
+     * Whether the AI player is searching for its move
+     * @return true if a search is running, false otherwise
+     */
+    private boolean isSearching() {
+        return search != null;
+    }
+
+    /**
+     * Stops the search of the AI player, if one is running, and the pondering, and makes
+     * sure that their results are never played
+     */
+    private void cancelSearch() {
+        searchGeneration++;
+        ponderer.stop();
+        search = null;
+        gameBoard.setThinking(false);
+    }
+
     /**
      * Checks if the game board cell which was clicked has already been marked with 'X' or 'O'
      * @param  coordinateClicked the game board cell which was clicked
@@ -0,0 +1,106 @@
+package gui;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Plays the sound of a move
+ * <p>The sound is decoded once, when the window is created, into a few {@link Clip}s which are
+ * played in turn, so that a move made while the sound of the last one is still playing does not
+ * cut it short. Clips are started on a thread of their own, so that a slow audio device never
+ * holds up the event dispatch thread</p>
+ * <p>Without an audio device, on a headless machine, or if the sound cannot be decoded,
+ * moves are silent</p>
+ * @author NkolasN
+ */
+class MoveSound {
+
+    private static final int CLIPS = 3;
+
+    private final Clip[] clips;
+    private final ExecutorService player;
+    private int next;
+
+    /**
+     * Loads a sound from the class path
+     * @param resource the name of the sound file
+     */
+    MoveSound(String resource) {
+        clips = load(resource);
+        player = clips.length == 0 ? null : Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "move-sound");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Plays the sound from its start, unless sound is disabled. Returns at once
+     */
+    void play() {
+        if (clips.length == 0) {
+            return;
+        }
+
+        Clip clip = clips[next];
+        next = (next + 1) % clips.length;
+        player.execute(() -> {
+            clip.stop();
+            clip.setFramePosition(0);
+            clip.start();
+        });
+    }
+
+    /**
+     * Decodes a sound into clips
+     * @param resource the name of the sound file
+     * @return the clips holding the sound, none if sound is disabled
+     */
+    private static Clip[] load(String resource) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new Clip[0];
+        }
+
+        InputStream in = MoveSound.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            return new Clip[0];
+        }
+
+        Clip[] clips = new Clip[CLIPS];
+        try (AudioInputStream stream = AudioSystem.getAudioInputStream(new BufferedInputStream(in))) {
+            AudioFormat format = stream.getFormat();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read; (read = stream.read(buffer)) > 0; ) {
+                bytes.write(buffer, 0, read);
+            }
+            byte[] data = bytes.toByteArray();
+
+            for (int i = 0; i < clips.length; i++) {
+                clips[i] = AudioSystem.getClip();
+                clips[i].open(format, data, 0, data.length - data.length % format.getFrameSize());
+            }
+            return clips;
+        } catch (IOException | UnsupportedAudioFileException | LineUnavailableException |
+                 IllegalArgumentException | SecurityException e) {
+            // no audio device or no usable sound: play nothing
+            for (Clip clip : clips) {
+                if (clip != null) {
+                    clip.close();
+                }
+            }
+            return new Clip[0];
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package protocol;
+
+import gamelogic.Coordinate;
+import gamelogic.Minimax;
+import gamelogic.Position;
+import gamelogic.Rules;
+import gamelogic.SearchResult;
+import gamelogic.State;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static constants.Constants.Player.O;
+import static constants.Constants.Player.X;
+
+/**
+ * Drives the AI player with text commands, one per line, in the manner of the UCI protocol of
+ * chess engines, so that other programs can play with it without a window.
+ * <p>The commands are:</p>
+ * <ul>
+ *     <li>{@code rules <width> <height> <k>}: plays another game, the standard 3x3 one at first,
+ *     from its empty board</li>
+ *     <li>{@code position startpos|<board> [X|O] [moves <row>,<column> ...]}: sets the position to
+ *     search, the empty board or a board written as in {@link Position#parse(Rules, CharSequence,
+ *     constants.Constants.Player)}, then plays the moves given, rows and columns counting from 0</li>
+ *     <li>{@code go [depth <plies>] [movetime <milliseconds>] [nodes <count>] [infinite]}: searches the
+ *     position one ply deeper at a time until one of the limits is reached, to the depth of the game
+ *     if none is given. With {@code infinite} the search goes on until {@code stop}, and as in UCI its
+ *     best move is only reported then, even when every depth has been searched before</li>
+ *     <li>{@code stop}: stops the search at once</li>
+ *     <li>{@code newgame}: forgets what earlier searches learnt, and {@code isready}, {@code uci} and
+ *     {@code quit} as in UCI</li>
+ * </ul>
+ * <p>Every depth searched is reported by a line
+ * {@code info depth <plies> score <score> nodes <count> nps <count> time <milliseconds> pv <moves>},
+ * the score being positive when it favours the player to move, and the search ends with
+ * {@code bestmove <row>,<column>}, or {@code bestmove (none)} if the game is over. Errors are
+ * reported by {@code info string} lines</p>
+ * <p>Commands are read while the search runs on a thread of its own, so {@code stop} interrupts it
+ * within about a thousand nodes and the best move of the last complete depth is played. Any other
+ * command which changes the position stops the running search first</p>
+ * @author NkolasN
+ */
+public class EngineProtocol {
+
+    private final BufferedReader in;
+    private final PrintWriter out;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "protocol-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Rules rules = Rules.STANDARD;
+    private Minimax minimax = new Minimax(new State(rules));
+    private Position position = new Position(rules);
+    private Search search;
+
+    /**
+     * @param in where the commands are read from
+     * @param out where the answers are written to
+     */
+    public EngineProtocol(Reader in, Writer out) {
+        this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        this.out = new PrintWriter(out);
+    }
+
+    /**
+     * Answers commands until {@code quit} or the end of the input
+     * @throws IOException if the commands cannot be read
+     * @throws InterruptedException if the thread is interrupted while waiting for a search to stop
+     */
+    public void run() throws IOException, InterruptedException {
+        try {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                String[] words = line.trim().split("\\s+");
+                if (words[0].isEmpty()) {
+                    continue;
+                }
+                try {
+                    if (!execute(words)) {
+                        break;
+                    }
+                } catch (IllegalArgumentException e) {
+                    send("info string " + e.getMessage());
+                }
+            }
+        } finally {
+            stopSearch();
+            timer.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs a command
+     * @param words the command and its arguments
+     * @return false to quit, true otherwise
+     * @throws IllegalArgumentException if the command or its arguments are invalid
+     */
+    private boolean execute(String[] words) throws InterruptedException {
+        switch (words[0]) {
+            case "uci":
+                send("id name Tic-Tac-Toe minimax");
+                send("id author NkolasN");
+                send("uciok");
+                return true;
+            case "isready":
+                send("readyok");
+                return true;
+            case "rules":
+                if (words.length != 4) {
+                    throw new IllegalArgumentException("Usage: rules <width> <height> <k>");
+                }
+                Rules newRules = new Rules(integer(words[1]), integer(words[2]), integer(words[3]));
+                stopSearch();
+                rules = newRules;
+                minimax = new Minimax(new State(rules));
+                position = new Position(rules);
+                return true;
+            case "newgame":
+            case "ucinewgame":
+                stopSearch();
+                minimax.clearTable();
+                position = new Position(rules);
+                return true;
+            case "position":
+                Position newPosition = parsePosition(words);
+                stopSearch();
+                position = newPosition;
+                return true;
+            case "go":
+                Search newSearch = parseGo(words);
+                stopSearch();
+                search = newSearch;
+                search.start();
+                return true;
+            case "stop":
+                stopSearch();
+                return true;
+            case "quit":
+                return false;
+            default:
+                throw new IllegalArgumentException("Unknown command: " + words[0]);
+        }
+    }
+
+    /**
+     * Builds the position of a {@code position} command
+     */
+    private Position parsePosition(String[] words) {
+        if (words.length < 2) {
+            throw new IllegalArgumentException("Usage: position startpos|<board> [X|O] [moves <row>,<column> ...]");
+        }
+
+        int next = 2;
+        Position newPosition;
+        if (words[1].equals("startpos")) {
+            newPosition = new Position(rules);
+        } else if (words.length > 2 && (words[2].equalsIgnoreCase("X") || words[2].equalsIgnoreCase("O"))) {
+            newPosition = Position.parse(rules, words[1], words[2].equalsIgnoreCase("X") ? X : O);
+            next = 3;
+        } else {
+            newPosition = Position.parse(rules, words[1], null);
+        }
+
+        if (next < words.length) {
+            if (!words[next].equals("moves")) {
+                throw new IllegalArgumentException("Expected moves, given " + words[next]);
+            }
+            for (int i = next + 1; i < words.length; i++) {
+                int cell = parseMove(words[i]);
+                if (newPosition.isGameOver() || newPosition.isMarkedBy(cell, X) || newPosition.isMarkedBy(cell, O)) {
+                    throw new IllegalArgumentException("Illegal move " + words[i]);
+                }
+                newPosition.make(cell);
+            }
+        }
+        return newPosition;
+    }
+
+    /**
+     * Builds the search of a {@code go} command
+     */
+    private Search parseGo(String[] words) {
+        int depth = 0;
+        long moveTime = 0;
+        long nodes = 0;
+        boolean infinite = false;
+
+        for (int i = 1; i < words.length; i++) {
+            switch (words[i]) {
+                case "depth":
+                    depth = (int) positive(words, ++i);
+                    break;
+                case "movetime":
+                    moveTime = positive(words, ++i);
+                    break;
+                case "nodes":
+                    nodes = positive(words, ++i);
+                    break;
+                case "infinite":
+                    infinite = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown limit: " + words[i]);
+            }
+        }
+
+        int maxDepth = depth > 0 ? depth :
+                       infinite || moveTime > 0 || nodes > 0 ? position.emptyCount() : Minimax.depthFor(rules);
+        return new Search(position.copy(), Math.min(maxDepth, position.emptyCount()), moveTime, nodes, infinite);
+    }
+
+    /**
+     * Stops the running search, if any, and waits for it to report its best move
+     */
+    private void stopSearch() throws InterruptedException {
+        if (search != null) {
+            search.stop();
+            search.thread.join();
+            search = null;
+        }
+    }
+
+    private int parseMove(String move) {
+        int comma = move.indexOf(',');
+        if (comma < 0) {
+            throw new IllegalArgumentException("Moves are written <row>,<column>, given " + move);
+        }
+        int row = integer(move.substring(0, comma));
+        int column = integer(move.substring(comma + 1));
+        if (row < 0 || row >= rules.getHeight() || column < 0 || column >= rules.getWidth()) {
+            throw new IllegalArgumentException("Move off the board: " + move);
+        }
+        return rules.cellOf(new Coordinate(row, column));
+    }
+
+    private String formatMove(int cell) {
+        Coordinate c = rules.coordinateOf(cell);
+        return c.getX() + "," + c.getY();
+    }
+
+    private static long positive(String[] words, int i) {
+        if (i >= words.length) {
+            throw new IllegalArgumentException(words[i - 1] + " needs a value");
+        }
+        long value;
+        try {
+            value = Long.parseLong(words[i]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + words[i]);
+        }
+        if (value <= 0) {
+            throw new IllegalArgumentException(words[i - 1] + " must be positive, given " + value);
+        }
+        return value;
+    }
+
+    private static int integer(String word) {
+        try {
+            return Integer.parseInt(word);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + word);
+        }
+    }
+
+    private synchronized void send(String line) {
+        out.println(line);
+        out.flush();
+    }
+
+
+    /**
+     * A search deepening one ply at a time on a thread of its own
+     */
+    private class Search implements Runnable {
+
+        private final Position root;
+        private final int maxDepth;
+        private final long moveTime;
+        private final long nodeLimit;
+        private final boolean infinite;
+        private final Minimax minimax = EngineProtocol.this.minimax;
+        private final Thread thread = new Thread(this, "protocol-search");
+        private volatile boolean stopped;
+        private boolean finished;
+
+        Search(Position root, int maxDepth, long moveTime, long nodeLimit, boolean infinite) {
+            this.root = root;
+            this.maxDepth = maxDepth;
+            this.moveTime = moveTime;
+            this.nodeLimit = nodeLimit;
+            this.infinite = infinite;
+        }
+
+        void start() {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Stops the search from another thread. The thread is interrupted as well as the search
+         * cancelled, as a cancellation arriving between two depths would be forgotten by the next one.
+         * Once the search has finished nothing is done, so that a late timer never cancels the next
+         * search of the same {@link Minimax}
+         */
+        synchronized void stop() {
+            if (finished) {
+                return;
+            }
+            stopped = true;
+            thread.interrupt();
+            minimax.cancel();
+            notifyAll();
+        }
+
+        /**
+         * Waits for {@code stop} before the best move of an infinite search is reported
+         */
+        private synchronized void awaitStop() {
+            try {
+                while (!stopped) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                // only stop interrupts the search thread
+            }
+        }
+
+        @Override
+        public void run() {
+            if (root.isGameOver()) {
+                send("info string the game is over");
+                if (infinite) {
+                    awaitStop();
+                }
+                synchronized (this) {
+                    finished = true;
+                }
+                send("bestmove (none)");
+                return;
+            }
+
+            ScheduledFuture<?> deadline = moveTime > 0 ? timer.schedule(this::stop, moveTime, TimeUnit.MILLISECONDS) : null;
+            long start = System.nanoTime();
+            long nodes = 0;
+            SearchResult best = null;
+
+            try {
+                for (int depth = 1; depth <= maxDepth && !stopped; depth++) {
+                    if (nodeLimit > 0) {
+                        if (nodes >= nodeLimit) {
+                            break;
+                        }
+                        minimax.setNodeLimit(nodeLimit - nodes);
+                    }
+
+                    SearchResult result;
+                    try {
+                        result = minimax.minimax(root, depth);
+                    } finally {
+                        nodes += minimax.getNodesVisited();
+                    }
+                    best = result;
+                    info(depth, result, nodes, start);
+                }
+            } catch (CancellationException e) {
+                // stopped, out of time or out of nodes: the last complete depth is played
+            } finally {
+                if (deadline != null) {
+                    deadline.cancel(false);
+                }
+                minimax.setNodeLimit(0);
+            }
+
+            if (infinite) {
+                awaitStop();
+            }
+            synchronized (this) {
+                finished = true;
+            }
+
+            send("bestmove " + formatMove(best != null ? best.getCell() : firstEmptyCell()));
+        }
+
+        private void info(int depth, SearchResult result, long nodes, long start) {
+            long nanos = Math.max(1, System.nanoTime() - start);
+            StringBuilder line = new StringBuilder(64);
+            line.append("info depth ").append(depth)
+                .append(" score ").append(root.getTurn() == O ? result.getScore() : -result.getScore())
+                .append(" nodes ").append(nodes)
+                .append(" nps ").append(nodes * 1_000_000_000L / nanos)
+                .append(" time ").append(nanos / 1_000_000)
+                .append(" pv");
+            for (Coordinate c : result.getPrincipalVariation()) {
+                line.append(' ').append(c.getX()).append(',').append(c.getY());
+            }
+            send(line.toString());
+        }
+
+        /**
+         * The move played when not even the first depth could be searched
+         */
+        private int firstEmptyCell() {
+            int cell = 0;
+            while (root.isMarkedBy(cell, X) || root.isMarkedBy(cell, O)) {
+                cell++;
+            }
+            return cell;
+        }
+    }
+}
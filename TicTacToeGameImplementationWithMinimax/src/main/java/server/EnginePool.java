@@ -0,0 +1,150 @@
+package server;
+
+import gamelogic.Minimax;
+import gamelogic.Position;
+import gamelogic.Rules;
+import gamelogic.SearchResult;
+import gamelogic.State;
+import gamelogic.TableSnapshot;
+import gamelogic.TranspositionTable;
+
+import java.io.IOException;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+
+import static constants.Constants.TRANSPOSITION_TABLE_SIZE;
+
+/**
+ * A bounded number of searches for each of the board sizes the server plays, shared by its requests.
+ * <p>A {@link Minimax} keeps its transposition table between searches and searches one position
+ * at a time, so each request borrows one for the rules of its board and gives it back when done.
+ * There are never more searches of a board size than engines, so a burst of requests queues up for
+ * the engines instead of running thousands of searches on a few cores</p>
+ * <p>The board sizes are fixed when the pool is created, so requests cannot make it hold engines
+ * and tables for ever more boards, and every search stops after a number of nodes, so a request
+ * cannot hold an engine for long</p>
+ * <p>The engines of a board size share one transposition table, which needs no locking. It starts
+ * from the {@link TableSnapshot} of the board size, if there is one, and is saved back to it by
+ * {@link #saveSnapshots()}, so a restarted server answers as quickly as before</p>
+ * @author NkolasN
+ */
+class EnginePool {
+
+    private final int engines;
+    private final long nodeLimit;
+    private final Map<Rules, BlockingQueue<Minimax>> pools = new LinkedHashMap<>();
+    private final Map<Rules, TranspositionTable> tables = new LinkedHashMap<>();
+
+    /**
+     * Creates the engines of every board size, loading their snapshots
+     * @param engines the number of searches of every board size which can run at once
+     * @param nodeLimit the number of nodes a search may visit, see {@link Minimax#setNodeLimit(long)}
+     * @param rules the rules of the boards searched
+     */
+    EnginePool(int engines, long nodeLimit, Collection<Rules> rules) {
+        if (engines < 1) {
+            throw new IllegalArgumentException("There must be at least one engine, given " + engines);
+        }
+        if (rules.isEmpty()) {
+            throw new IllegalArgumentException("There must be at least one board size");
+        }
+        this.engines = engines;
+        this.nodeLimit = nodeLimit;
+        for (Rules r : rules) {
+            pools.put(r, createPool(r));
+        }
+    }
+
+    /**
+     * Finds the rules of a board size searched by the pool, without building rules for sizes it
+     * does not search
+     * @param width the number of columns of the board
+     * @param height the number of rows of the board
+     * @param k the number of marks in a row which win
+     * @return the rules of the board
+     * @throws IllegalArgumentException if the pool does not search boards of this size
+     */
+    Rules rulesFor(int width, int height, int k) {
+        for (Rules rules : pools.keySet()) {
+            if (rules.getWidth() == width && rules.getHeight() == height && rules.getK() == k) {
+                return rules;
+            }
+        }
+        throw new IllegalArgumentException("Boards of " + width + "x" + height + " k=" + k
+                                           + " are not served, only " + pools.keySet());
+    }
+
+    /**
+     * @return the rules of the boards searched by the pool
+     */
+    Collection<Rules> getRules() {
+        return Collections.unmodifiableSet(pools.keySet());
+    }
+
+    /**
+     * Searches a position with one of the engines of its board size, waiting for one to be free
+     * @param position the position to search
+     * @param depth the depth of the search
+     * @return the result of the search
+     * @throws IllegalArgumentException if the pool does not search boards of this size
+     * @throws CancellationException if the search visits more nodes than it may
+     * @throws InterruptedException if the thread is interrupted while waiting for an engine
+     */
+    SearchResult search(Position position, int depth) throws InterruptedException {
+        BlockingQueue<Minimax> pool = pools.get(position.getRules());
+        if (pool == null) {
+            throw new IllegalArgumentException("Boards of " + position.getRules() + " are not served, only " + pools.keySet());
+        }
+        Minimax minimax = pool.take();
+
+        try {
+            return minimax.minimax(position, depth);
+        } finally {
+            pool.add(minimax);
+        }
+    }
+
+    /**
+     * Saves the transposition table of every board size to its snapshot. Searches may
+     * run while the tables are saved
+     * @throws IOException if a snapshot cannot be written; the other tables are still saved
+     */
+    void saveSnapshots() throws IOException {
+        IOException failure = null;
+
+        for (Map.Entry<Rules, TranspositionTable> table : tables.entrySet()) {
+            try {
+                TableSnapshot.save(TableSnapshot.pathFor(table.getKey()), table.getKey(), table.getValue());
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private BlockingQueue<Minimax> createPool(Rules rules) {
+        TranspositionTable table = new TranspositionTable(TRANSPOSITION_TABLE_SIZE);
+        TableSnapshot.load(TableSnapshot.pathFor(rules), rules, table);
+        tables.put(rules, table);
+
+        BlockingQueue<Minimax> pool = new ArrayBlockingQueue<>(engines);
+        for (int i = 0; i < engines; i++) {
+            Minimax minimax = new Minimax(new State(rules), table);
+            minimax.setNodeLimit(nodeLimit);
+            pool.add(minimax);
+        }
+        return pool;
+    }
+}
@@ -0,0 +1,318 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import constants.Constants;
+import gamelogic.Coordinate;
+import gamelogic.LatencyHistogram;
+import gamelogic.Position;
+import gamelogic.Rules;
+import gamelogic.SearchResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import static constants.Constants.LARGE_BOARD_MINIMAX_DEPTH;
+import static constants.Constants.MINIMAX_DEPTH;
+import static constants.Constants.SERVER_NODE_LIMIT;
+import static constants.Constants.Player.O;
+import static constants.Constants.Player.X;
+
+/**
+ * Serves the moves of the AI player over HTTP, without a window.
+ * <p>{@code GET /move?board=...} searches a board and answers with the move and the score as JSON.
+ * The board is given row by row, one character per cell: 'X', 'O', or '-' for an empty cell, and
+ * the optional parameters are {@code width}, {@code height} and {@code k} for boards other than the
+ * standard one, among those the server was started with, {@code turn} for the player to move (by default the one the number of marks gives,
+ * 'X' playing first) and {@code depth}, at most the depth of the game. {@code GET /stats} answers with
+ * the number of requests and the percentiles of their latency</p>
+ * <p>The server only listens on the loopback address. Every request runs on its own virtual thread
+ * when the JDK has them, looked up at run time as the project targets Java 8, and on a fixed pool of
+ * threads otherwise. Searches run on an {@link EnginePool}, so thousands of requests can wait on a
+ * few engines. A search visiting more than {@link constants.Constants#SERVER_NODE_LIMIT} nodes is
+ * stopped and answered with status 422, asking for a smaller depth</p>
+ * @author NkolasN
+ */
+public class MoveServer {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final EnginePool engines;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+
+    /**
+     * Creates a server of the standard board listening on the loopback address
+     * @param port the port to listen on, 0 for any free port
+     * @param engines the number of searches which can run at once
+     * @throws IOException if the port cannot be bound
+     */
+    public MoveServer(int port, int engines) throws IOException {
+        this(port, engines, Collections.singleton(Rules.STANDARD));
+    }
+
+    /**
+     * Creates a server listening on the loopback address
+     * @param port the port to listen on, 0 for any free port
+     * @param engines the number of searches of every board size which can run at once
+     * @param rules the rules of the boards served, the others being refused
+     * @throws IOException if the port cannot be bound
+     */
+    public MoveServer(int port, int engines, Collection<Rules> rules) throws IOException {
+        this.engines = new EnginePool(engines, SERVER_NODE_LIMIT, rules);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4096);
+
+        ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+        virtualThreads = virtual != null;
+        executor = virtualThreads ? virtual : Executors.newFixedThreadPool(Math.max(8, 4 * engines));
+
+        server.setExecutor(executor);
+        server.createContext("/move", exchange -> handle(exchange, true));
+        server.createContext("/stats", exchange -> handle(exchange, false));
+    }
+
+    /**
+     * Returns an executor starting a virtual thread for every task, if the JDK supports them
+     * @return the executor, null on JDKs without virtual threads
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts answering requests
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server, giving the requests being answered a second to complete, and saves
+     * what the engines have learnt, see {@link #saveSnapshots()}
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdownNow();
+        try {
+            saveSnapshots();
+        } catch (IOException e) {
+            System.err.println("Transposition tables not saved: " + e);
+        }
+    }
+
+    /**
+     * Saves the transposition table of every board size served to its {@link gamelogic.TableSnapshot},
+     * which the engines start from when the server is restarted
+     * @throws IOException if a snapshot cannot be written
+     */
+    public void saveSnapshots() throws IOException {
+        engines.saveSnapshots();
+    }
+
+    /**
+     * @return the address the server listens on
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * @return true if every request runs on its own virtual thread, false if on a pool of threads
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @return the latency of the requests answered so far
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Answers a request, recording its latency
+     * @param exchange the request and its response
+     * @param move true for a move request, false for the statistics
+     */
+    private void handle(HttpExchange exchange, boolean move) throws IOException {
+        long start = System.nanoTime();
+        inFlight.increment();
+        int status = 200;
+        String body;
+
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                status = 405;
+                body = error("Only GET is supported");
+            } else {
+                body = move ? move(parameters(exchange.getRequestURI().getRawQuery()), start) : statistics();
+            }
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            body = error(e.getMessage());
+        } catch (CancellationException e) {
+            status = 422;
+            body = error("The search needs more than " + SERVER_NODE_LIMIT + " nodes, ask for a smaller depth");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = 503;
+            body = error("The server is shutting down");
+        } catch (RuntimeException e) {
+            status = 500;
+            body = error(e.toString());
+        }
+
+        try {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+            inFlight.decrement();
+            if (status != 200) {
+                errors.increment();
+            }
+            latencies.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Searches the board of a move request
+     * @param parameters the parameters of the request
+     * @param start when the request was received, in nanoseconds
+     * @return the move and score as JSON
+     * @throws CancellationException if the search visits more than {@link constants.Constants#SERVER_NODE_LIMIT} nodes
+     * @throws InterruptedException if the server stops while the request waits for an engine
+     */
+    private String move(Map<String, String> parameters, long start) throws InterruptedException {
+        Rules rules;
+        if (parameters.containsKey("width") || parameters.containsKey("height") || parameters.containsKey("k")) {
+            rules = engines.rulesFor(integer(parameters, "width"), integer(parameters, "height"), integer(parameters, "k"));
+        } else {
+            rules = engines.rulesFor(Rules.STANDARD.getWidth(), Rules.STANDARD.getHeight(), Rules.STANDARD.getK());
+        }
+
+        Position position = parseBoard(rules, parameters.get("board"), parameters.get("turn"));
+        if (position.isGameOver()) {
+            throw new IllegalArgumentException("The game is over");
+        }
+
+        int maxDepth = rules.getCells() <= Rules.STANDARD.getCells() ? MINIMAX_DEPTH : LARGE_BOARD_MINIMAX_DEPTH;
+        int depth = parameters.containsKey("depth") ? integer(parameters, "depth") : maxDepth;
+        if (depth < 1 || depth > maxDepth) {
+            throw new IllegalArgumentException("Depth must be between 1 and " + maxDepth + ", given " + depth);
+        }
+
+        SearchResult result = engines.search(position, depth);
+
+        StringBuilder json = new StringBuilder(128);
+        json.append("{\"move\":").append(coordinate(result.getMove()))
+            .append(",\"cell\":").append(result.getCell())
+            .append(",\"score\":").append(result.getScore())
+            .append(",\"depth\":").append(result.getDepth())
+            .append(",\"principalVariation\":[");
+        for (Coordinate c : result.getPrincipalVariation()) {
+            json.append(json.charAt(json.length() - 1) == '[' ? "" : ",").append(coordinate(c));
+        }
+        json.append("],\"latencyMicros\":").append((System.nanoTime() - start) / 1000).append('}');
+
+        return json.toString();
+    }
+
+    /**
+     * Builds the position of a board given row by row, see {@link Position#parse(Rules, CharSequence, Constants.Player)}
+     * @param rules the rules of the game
+     * @param board one character per cell
+     * @param turn "X" or "O", null to infer it from the number of marks
+     * @return the position of the board
+     */
+    static Position parseBoard(Rules rules, String board, String turn) {
+        if (turn != null && !turn.equalsIgnoreCase("X") && !turn.equalsIgnoreCase("O")) {
+            throw new IllegalArgumentException("The turn must be X or O, given " + turn);
+        }
+
+        return Position.parse(rules, board, turn == null ? null : turn.equalsIgnoreCase("X") ? X : O);
+    }
+
+    /**
+     * @return the number of requests and the percentiles of their latency as JSON
+     */
+    private String statistics() {
+        return String.format("{\"requests\":%d,\"errors\":%d,\"inFlight\":%d,\"virtualThreads\":%b,"
+                             + "\"latencyMicros\":{\"p50\":%d,\"p90\":%d,\"p99\":%d,\"p999\":%d,\"max\":%d}}",
+                             latencies.count(), errors.sum(), inFlight.sum() - 1, virtualThreads,
+                             latencies.percentile(50) / 1000, latencies.percentile(90) / 1000,
+                             latencies.percentile(99) / 1000, latencies.percentile(99.9) / 1000,
+                             latencies.max() / 1000);
+    }
+
+    private static String coordinate(Coordinate c) {
+        return c == null ? "null" : "{\"row\":" + c.getX() + ",\"column\":" + c.getY() + "}";
+    }
+
+    private static String error(String message) {
+        return "{\"error\":\"" + String.valueOf(message).replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+    }
+
+    private static int integer(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter " + name + " must be a number, given " + value);
+        }
+    }
+
+    /**
+     * Decodes the parameters of a query string
+     * @param query the raw query string, null if there is none
+     * @return the value of every parameter by name
+     */
+    private static Map<String, String> parameters(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+
+        try {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(URLDecoder.decode(parameter.substring(0, equals), "UTF-8"),
+                                   URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+                }
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return parameters;
+    }
+}
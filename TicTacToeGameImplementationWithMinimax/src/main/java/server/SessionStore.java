@@ -0,0 +1,416 @@
+package server;
+
+import gamelogic.Position;
+import gamelogic.Rules;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import static constants.Constants.Player.O;
+import static constants.Constants.Player.X;
+
+/**
+ * The games of many players at once, each kept under a random session id.
+ * <p>A game takes one {@code long}: the base-3 encoding of its board, see {@link Position#code()},
+ * with the player to move in bit 62, so boards of up to 39 cells can be kept. The sessions are
+ * shared out between stripes by id, each stripe an open addressing table in parallel arrays guarded
+ * by its own lock, so a session costs a few dozen bytes and threads only contend on the same
+ * stripe</p>
+ * <p>There are never more sessions than the given maximum: when a stripe is full, its least recently
+ * used session is evicted, and sessions idle for longer than the timeout are evicted as they are
+ * found, when their stripe runs out of room or on {@link #evictExpired()}. Idle time is counted in
+ * whole seconds</p>
+ * @author NkolasN
+ */
+public class SessionStore {
+
+    private static final long O_TO_MOVE = 1L << 62;
+    private static final int MAX_CELLS = 39;
+
+    private final Rules rules;
+    private final Stripe[] stripes;
+    private final int idleSeconds;
+    private final LongSupplier clock;
+    private final long epoch;
+    private final SecureRandom random = new SecureRandom();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a store of sessions spread over a stripe for every few cores
+     * @param rules the rules of the games of the sessions
+     * @param maxSessions the most sessions kept at once
+     * @param idleTimeout how long a session is kept without being used
+     * @param unit the unit of the timeout
+     */
+    public SessionStore(Rules rules, int maxSessions, long idleTimeout, TimeUnit unit) {
+        this(rules, maxSessions, idleTimeout, unit,
+             Integer.highestOneBit(Math.max(16, 4 * Runtime.getRuntime().availableProcessors())), System::nanoTime);
+    }
+
+    /**
+     * @param stripeCount the number of stripes, a power of two
+     * @param clock the time in nanoseconds
+     */
+    SessionStore(Rules rules, int maxSessions, long idleTimeout, TimeUnit unit, int stripeCount, LongSupplier clock) {
+        if (rules.getCells() > MAX_CELLS) {
+            throw new IllegalArgumentException("Sessions are kept for boards of up to " + MAX_CELLS
+                                               + " cells, given " + rules);
+        }
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("There must be room for at least one session, given " + maxSessions);
+        }
+        if (idleTimeout < 1 || Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("Invalid idle timeout or number of stripes");
+        }
+
+        this.rules = rules;
+        this.idleSeconds = (int) Math.min(Integer.MAX_VALUE, Math.max(1, unit.toSeconds(idleTimeout)));
+        this.clock = clock;
+        this.epoch = clock.getAsLong();
+
+        int count = Math.min(stripeCount, Integer.highestOneBit(maxSessions));
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(maxSessions / count + (i < maxSessions % count ? 1 : 0));
+        }
+    }
+
+    /**
+     * Starts a new game
+     * @return the id of its session
+     */
+    public long create() {
+        return create(new Position(rules));
+    }
+
+    /**
+     * Starts a session from a position
+     * @param position the position of the game
+     * @return the id of the session
+     */
+    public long create(Position position) {
+        long board = encode(position);
+
+        while (true) {
+            long id = random.nextLong();
+            if (id != 0 && stripeOf(id).insert(id, board, now())) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Returns the game of a session, marking it as used
+     * @param id the id of the session
+     * @return the position of the game, null if there is no such session or it has expired
+     */
+    public Position get(long id) {
+        long board = stripeOf(id).get(id, now());
+        return board == -1 ? null : Position.fromCode(rules, board & ~O_TO_MOVE, (board & O_TO_MOVE) != 0 ? O : X);
+    }
+
+    /**
+     * Replaces the game of a session, marking it as used
+     * @param id the id of the session
+     * @param position the new position of the game
+     * @return true if it was replaced, false if there is no such session or it has expired
+     */
+    public boolean update(long id, Position position) {
+        return stripeOf(id).update(id, encode(position), now());
+    }
+
+    /**
+     * Ends a session
+     * @param id the id of the session
+     * @return true if it was removed, false if there is no such session
+     */
+    public boolean remove(long id) {
+        return stripeOf(id).remove(id);
+    }
+
+    /**
+     * Evicts every session idle for longer than the timeout
+     * @return the number of sessions evicted
+     */
+    public int evictExpired() {
+        int evicted = 0;
+        int now = now();
+        for (Stripe stripe : stripes) {
+            evicted += stripe.evictExpired(now);
+        }
+        return evicted;
+    }
+
+    /**
+     * @return the number of sessions kept, some of which may have expired
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of sessions evicted as the least recently used or as idle
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the bytes taken by the tables of the sessions
+     */
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            bytes += stripe.memoryBytes();
+        }
+        return bytes;
+    }
+
+    private long encode(Position position) {
+        if (!position.getRules().equals(rules)) {
+            throw new IllegalArgumentException("The store keeps " + rules + " games, given " + position.getRules());
+        }
+        return position.code() | (position.getTurn() == O ? O_TO_MOVE : 0);
+    }
+
+    private Stripe stripeOf(long id) {
+        return stripes[(int) (id >>> 32) & (stripes.length - 1)];
+    }
+
+    private int now() {
+        return (int) TimeUnit.NANOSECONDS.toSeconds(clock.getAsLong() - epoch);
+    }
+
+    /**
+     * The sessions of one stripe, an open addressing table with linear probing whose slots are
+     * also linked from the most to the least recently used
+     */
+    private final class Stripe {
+
+        private final int capacity;
+        private long[] ids;
+        private long[] boards;
+        private int[] lastUsed;
+        private int[] newer;
+        private int[] older;
+        private int newest = -1;
+        private int oldest = -1;
+        private int size;
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            allocate(16);
+        }
+
+        private void allocate(int length) {
+            ids = new long[length];
+            boards = new long[length];
+            lastUsed = new int[length];
+            newer = new int[length];
+            older = new int[length];
+        }
+
+        synchronized long get(long id, int now) {
+            int slot = find(id);
+            if (slot < 0) {
+                return -1;
+            }
+            if (now - lastUsed[slot] >= idleSeconds) {
+                evict(slot);
+                return -1;
+            }
+            use(slot, now);
+            return boards[slot];
+        }
+
+        synchronized boolean update(long id, long board, int now) {
+            int slot = find(id);
+            if (slot < 0) {
+                return false;
+            }
+            if (now - lastUsed[slot] >= idleSeconds) {
+                evict(slot);
+                return false;
+            }
+            boards[slot] = board;
+            use(slot, now);
+            return true;
+        }
+
+        /**
+         * Adds a session, making room for it first
+         * @return false if there is already a session with the id
+         */
+        synchronized boolean insert(long id, long board, int now) {
+            if (find(id) >= 0) {
+                return false;
+            }
+
+            evictExpired(now);
+            if (size == capacity) {
+                evict(oldest);
+            }
+            if (size + 1 > ids.length - (ids.length >>> 2)) {
+                grow();
+            }
+
+            int slot = home(id);
+            while (ids[slot] != 0) {
+                slot = (slot + 1) & (ids.length - 1);
+            }
+            ids[slot] = id;
+            boards[slot] = board;
+            lastUsed[slot] = now;
+            linkNewest(slot);
+            size++;
+            return true;
+        }
+
+        synchronized boolean remove(long id) {
+            int slot = find(id);
+            if (slot < 0) {
+                return false;
+            }
+            delete(slot);
+            return true;
+        }
+
+        synchronized int evictExpired(int now) {
+            int evicted = 0;
+            while (oldest != -1 && now - lastUsed[oldest] >= idleSeconds) {
+                evict(oldest);
+                evicted++;
+            }
+            return evicted;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long memoryBytes() {
+            return (long) ids.length * (Long.BYTES * 2 + Integer.BYTES * 3);
+        }
+
+        private int home(long id) {
+            return (int) (id * 0x9E3779B97F4A7C15L >>> 32) & (ids.length - 1);
+        }
+
+        private int find(long id) {
+            for (int slot = home(id); ids[slot] != 0; slot = (slot + 1) & (ids.length - 1)) {
+                if (ids[slot] == id) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private void use(int slot, int now) {
+            lastUsed[slot] = now;
+            if (slot != newest) {
+                unlink(slot);
+                linkNewest(slot);
+            }
+        }
+
+        private void evict(int slot) {
+            delete(slot);
+            evictions.increment();
+        }
+
+        /**
+         * Empties a slot, shifting back the sessions after it which would no longer be found
+         * past the empty slot
+         */
+        private void delete(int slot) {
+            unlink(slot);
+            size--;
+
+            int mask = ids.length - 1;
+            int empty = slot;
+            for (int next = (slot + 1) & mask; ids[next] != 0; next = (next + 1) & mask) {
+                int home = home(ids[next]);
+                if (((next - home) & mask) >= ((next - empty) & mask)) {
+                    move(next, empty);
+                    empty = next;
+                }
+            }
+            ids[empty] = 0;
+        }
+
+        private void move(int from, int to) {
+            ids[to] = ids[from];
+            boards[to] = boards[from];
+            lastUsed[to] = lastUsed[from];
+            newer[to] = newer[from];
+            older[to] = older[from];
+
+            if (newer[to] == -1) {
+                newest = to;
+            } else {
+                older[newer[to]] = to;
+            }
+            if (older[to] == -1) {
+                oldest = to;
+            } else {
+                newer[older[to]] = to;
+            }
+        }
+
+        private void linkNewest(int slot) {
+            newer[slot] = -1;
+            older[slot] = newest;
+            if (newest == -1) {
+                oldest = slot;
+            } else {
+                newer[newest] = slot;
+            }
+            newest = slot;
+        }
+
+        private void unlink(int slot) {
+            if (newer[slot] == -1) {
+                newest = older[slot];
+            } else {
+                older[newer[slot]] = older[slot];
+            }
+            if (older[slot] == -1) {
+                oldest = newer[slot];
+            } else {
+                newer[older[slot]] = newer[slot];
+            }
+        }
+
+        /**
+         * Doubles the table, adding the sessions back from the least to the most recently used
+         */
+        private void grow() {
+            long[] oldIds = ids;
+            long[] oldBoards = boards;
+            int[] oldLastUsed = lastUsed;
+            int[] oldNewer = newer;
+            int from = oldest;
+
+            allocate(oldIds.length * 2);
+            newest = -1;
+            oldest = -1;
+
+            for (; from != -1; from = oldNewer[from]) {
+                int slot = home(oldIds[from]);
+                while (ids[slot] != 0) {
+                    slot = (slot + 1) & (ids.length - 1);
+                }
+                ids[slot] = oldIds[from];
+                boards[slot] = oldBoards[from];
+                lastUsed[slot] = oldLastUsed[from];
+                linkNewest(slot);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package gamelogic;
+
+import constants.Constants.GameState;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the games appended to a {@link GameLog} are read back by a {@link GameLogReader}
+ * as they were written, across segments and logs reopened, and that a game cut short at the end
+ * of a segment is left out
+ * @author NkolasN
+ */
+public class GameLogTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final SplittableRandom random = new SplittableRandom(1);
+
+    @Test
+    public void gamesAreReadBackAsWritten() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        Rules rules = new Rules(7, 7, 4);
+        List<String> written = new ArrayList<>();
+
+        try (GameLog log = new GameLog(directory, rules, 256)) {
+            for (int game = 0; game < 200; game++) {
+                written.add(append(log, rules, game % (rules.getCells() + 1)));
+            }
+        }
+        try (GameLog log = new GameLog(directory, Rules.STANDARD)) {
+            for (int game = 0; game < 20; game++) {
+                written.add(append(log, Rules.STANDARD, game % 10));
+            }
+        }
+
+        assertTrue(segments(directory).size() > 2);
+        assertEquals(written, read(directory));
+    }
+
+    @Test
+    public void gameCutShortEndsTheSegment() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        List<String> written = new ArrayList<>();
+
+        try (GameLog log = new GameLog(directory, Rules.STANDARD)) {
+            for (int game = 0; game < 10; game++) {
+                written.add(append(log, Rules.STANDARD, 9));
+            }
+        }
+        Path segment = segments(directory).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2);
+        }
+        written.remove(written.size() - 1);
+
+        try (GameLog log = new GameLog(directory, Rules.STANDARD)) {
+            written.add(append(log, Rules.STANDARD, 5));
+        }
+
+        assertEquals(2, segments(directory).size());
+        assertEquals(written, read(directory));
+    }
+
+    /**
+     * Appends a game of distinct random cells with a random outcome
+     * @return the game as the reader gives it back
+     */
+    private String append(GameLog log, Rules rules, int count) throws IOException {
+        int[] cells = new int[rules.getCells()];
+        for (int i = 0; i < cells.length; i++) {
+            int j = random.nextInt(i + 1);
+            cells[i] = cells[j];
+            cells[j] = i;
+        }
+        GameState outcome = GameState.values()[random.nextInt(GameState.values().length)];
+
+        log.append(cells, count, outcome);
+        return describe(rules, cells, count, outcome);
+    }
+
+    private static List<String> read(Path directory) throws IOException {
+        List<String> games = new ArrayList<>();
+        long count = new GameLogReader(directory).replay(
+                (GameLogReader.GameVisitor) (rules, moves, moveCount, outcome) ->
+                        games.add(describe(rules, moves, moveCount, outcome)));
+        assertEquals(games.size(), count);
+        return games;
+    }
+
+    private static String describe(Rules rules, int[] moves, int count, GameState outcome) {
+        return rules + " " + Arrays.toString(Arrays.copyOf(moves, count)) + " " + outcome;
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.sorted().collect(Collectors.toList());
+        }
+    }
+}
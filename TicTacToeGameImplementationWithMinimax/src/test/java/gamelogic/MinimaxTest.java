@@ -0,0 +1,105 @@
+package gamelogic;
+
+import constants.Constants;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the alpha-beta search returns what the plain minimax search does on every position
+ * of the standard game which can be reached from the empty board, searched to the end of the game
+ * <p>Also checks that the threads of a parallel search score with the line scores of their search</p>
+ * @author NkolasN
+ */
+public class MinimaxTest {
+
+    private static final int REACHABLE_POSITIONS = 5478;
+
+    private final Minimax minimax = new Minimax(new State(Rules.STANDARD), Constants.SearchMode.MINIMAX);
+    private final Minimax alphaBeta = new Minimax(new State(Rules.STANDARD), Constants.SearchMode.ALPHA_BETA);
+    private final Set<Long> seen = new HashSet<>();
+
+    @Test
+    public void alphaBetaMatchesMinimaxOnEveryReachablePosition() {
+        compare(new Position(Rules.STANDARD));
+
+        assertEquals(REACHABLE_POSITIONS, seen.size());
+    }
+
+    @Test
+    public void rootSplitWorkersForgetFormerLineScores() {
+        Rules rules = new Rules(4, 4, 3);
+        Minimax parallel = new Minimax(new State(rules), Constants.SearchMode.TRANSPOSITION);
+        Minimax sequential = new Minimax(new State(rules), Constants.SearchMode.TRANSPOSITION);
+        parallel.setParallelism(2);
+        try {
+            for (int cell = 0; cell < rules.getCells(); cell++) {
+                Position position = new Position(rules);
+                position.make(cell);
+                parallel.minimax(position, 4);
+            }
+
+            parallel.setSequenceScores(1, 20, 400);
+            sequential.setSequenceScores(1, 20, 400);
+            for (int cell = 0; cell < rules.getCells(); cell++) {
+                Position position = new Position(rules);
+                position.make(cell);
+                assertEquals("score after " + cell, sequential.minimax(position, 4).getScore(),
+                             parallel.minimax(position, 4).getScore());
+            }
+        } finally {
+            parallel.setParallelism(1);
+        }
+    }
+
+    /**
+     * Compares both searches on a position and on every position reached from it not compared yet
+     */
+    private void compare(Position position) {
+        if (!seen.add(position.code())) {
+            return;
+        }
+
+        int depth = position.emptyCount();
+        SearchResult expected = minimax.minimax(position, depth);
+        SearchResult actual = alphaBeta.minimax(position, depth);
+        String board = board(position);
+
+        assertEquals("score of " + board, expected.getScore(), actual.getScore());
+
+        if (position.isGameOver()) {
+            assertEquals("move of the finished game " + board, -1, actual.getCell());
+            return;
+        }
+
+        int cell = actual.getCell();
+        assertTrue("move of " + board, cell >= 0 && !position.isMarkedBy(cell, Constants.Player.X)
+                                        && !position.isMarkedBy(cell, Constants.Player.O));
+        assertEquals("move of " + board, expected.getCell(), cell);
+
+        for (int word = 0; word < position.words(); word++) {
+            for (long empty = position.emptyCells(word); empty != 0; empty &= empty - 1) {
+                int next = word << 6 | Long.numberOfTrailingZeros(empty);
+                position.make(next);
+                compare(position);
+                position.unmake(next);
+            }
+        }
+    }
+
+    /**
+     * Writes a board a row after the other, '-' for an empty cell
+     */
+    private static String board(Position position) {
+        StringBuilder board = new StringBuilder();
+        for (int cell = 0; cell < position.getRules().getCells(); cell++) {
+            board.append(position.isMarkedBy(cell, Constants.Player.X) ? 'X' :
+                         position.isMarkedBy(cell, Constants.Player.O) ? 'O' : '-');
+        }
+        return board.toString();
+    }
+}
@@ -0,0 +1,44 @@
+package gamelogic;
+
+import constants.Constants;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the Monte Carlo tree search plays a legal move whatever its budget
+ * @author NkolasN
+ */
+public class MonteCarloTreeSearchTest {
+
+    @Test
+    public void singlePlayoutPlaysALegalMove() {
+        MonteCarloTreeSearch search = new MonteCarloTreeSearch(Rules.STANDARD, 1, 0, Constants.MCTS_TREE_NODES, 1);
+        Position position = new Position(Rules.STANDARD);
+
+        for (int ply = 0; !position.isGameOver(); ply++) {
+            SearchResult result = search.search(position);
+            int cell = result.getCell();
+
+            assertTrue("move " + cell + " at ply " + ply, cell >= 0 && cell < Rules.STANDARD.getCells());
+            assertFalse("move " + cell + " at ply " + ply, position.isMarkedBy(cell, Constants.Player.X)
+                                                           || position.isMarkedBy(cell, Constants.Player.O));
+            assertEquals(1, search.getNodesVisited());
+            position.make(cell);
+        }
+    }
+
+    @Test
+    public void finishedGameHasNoMove() {
+        Position position = new Position(Rules.STANDARD);
+        for (int cell : new int[]{0, 3, 1, 4, 2}) {
+            position.make(cell);
+        }
+
+        SearchResult result = new MonteCarloTreeSearch(Rules.STANDARD, 1, 0, Constants.MCTS_TREE_NODES, 1).search(position);
+
+        assertEquals(-1, result.getCell());
+    }
+}
@@ -0,0 +1,110 @@
+package gamelogic;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a snapshot fills a table with the entries saved, and that a snapshot which is
+ * damaged or does not match the game leaves the table empty
+ * @author NkolasN
+ */
+public class TableSnapshotTest {
+
+    private static final int SIZE = 1 << 10;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final TranspositionTable saved = new TranspositionTable(SIZE);
+    private final TranspositionTable loaded = new TranspositionTable(SIZE);
+    private final long[] keys = new long[300];
+    private Path file;
+    private int count;
+
+    @Before
+    public void save() throws IOException {
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+            saved.store(keys[i], random.nextInt(-1000, 1000), random.nextInt(1, 10),
+                        TranspositionTable.EXACT + random.nextInt(3), random.nextInt(9));
+        }
+
+        file = folder.getRoot().toPath().resolve("3x3k3.tt");
+        count = TableSnapshot.save(file, Rules.STANDARD, saved);
+    }
+
+    @Test
+    public void snapshotRestoresTheEntries() {
+        assertTrue(count > keys.length / 2);
+        assertEquals(count, TableSnapshot.load(file, Rules.STANDARD, loaded));
+
+        int found = 0;
+        for (long key : keys) {
+            assertEquals(saved.probe(key), loaded.probe(key));
+            found += loaded.probe(key) != TranspositionTable.MISS ? 1 : 0;
+        }
+        assertEquals(count, found);
+    }
+
+    @Test
+    public void missingSnapshotStartsCold() {
+        assertEquals(0, TableSnapshot.load(folder.getRoot().toPath().resolve("none.tt"), Rules.STANDARD, loaded));
+        assertEmpty();
+    }
+
+    @Test
+    public void corruptedEntriesAreIgnored() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            long offset = TableSnapshot.HEADER_BYTES + 16L * (count / 2) + 9;
+            channel.read(b, offset);
+            b.put(0, (byte) (b.get(0) ^ 1));
+            b.rewind();
+            channel.write(b, offset);
+        }
+
+        assertEquals(0, TableSnapshot.load(file, Rules.STANDARD, loaded));
+        assertEmpty();
+    }
+
+    @Test
+    public void truncatedSnapshotIsIgnored() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 16);
+        }
+
+        assertEquals(0, TableSnapshot.load(file, Rules.STANDARD, loaded));
+        assertEmpty();
+    }
+
+    @Test
+    public void snapshotOfOtherRulesIsIgnored() {
+        assertEquals(0, TableSnapshot.load(file, new Rules(4, 4, 3), loaded));
+        assertEmpty();
+    }
+
+    @Test
+    public void snapshotOfOtherLineScoresIsIgnored() {
+        assertEquals(0, TableSnapshot.load(file, Rules.STANDARD, new int[]{0, 1, 11, 112}, loaded));
+        assertEmpty();
+    }
+
+    private void assertEmpty() {
+        for (int slot = 0; slot < loaded.capacity(); slot++) {
+            assertEquals(TranspositionTable.MISS, loaded.entryAt(slot));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package gamelogic;
+
+import constants.Constants;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that a {@link Tablebase} numbers every board of its layers once, that a generation
+ * resumed after a layer writes the same file as an uninterrupted one, and that the tablebase of
+ * the standard game agrees with the full alpha-beta search on every reachable position
+ * @author NkolasN
+ */
+public class TablebaseTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Tablebase generate(Rules rules) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(Tablebase.fileName(rules));
+        Tablebase.generate(file, rules, 2, layer -> { });
+        return Tablebase.open(file);
+    }
+
+    @Test
+    public void everyBoardHasAnIndexOfItsOwn() throws IOException {
+        for (Rules rules : new Rules[]{Rules.STANDARD, new Rules(4, 3, 3)}) {
+            try (Tablebase tablebase = generate(rules)) {
+                int cells = rules.getCells();
+
+                for (int size = 0; size <= cells; size++) {
+                    long sets = binomial(cells, size);
+                    for (long rank = 0; rank < sets; rank++) {
+                        int set = tablebase.unrankSet(rank, size);
+                        assertEquals(size, Integer.bitCount(set));
+                        assertEquals(rank, tablebase.rankSet(set));
+                        if (rank + 1 < sets) {
+                            assertEquals(tablebase.unrankSet(rank + 1, size), Tablebase.nextSet(set));
+                        }
+                    }
+                }
+
+                BitSet indices = new BitSet();
+                long boards = 0;
+                for (int occupied = 0; occupied < 1 << cells; occupied++) {
+                    int marksX = (Integer.bitCount(occupied) + 1) / 2;
+                    for (int x = occupied; ; x = (x - 1) & occupied) {
+                        if (Integer.bitCount(x) == marksX) {
+                            long index = tablebase.indexOf(x, occupied & ~x);
+                            assertTrue(rules + " index " + index, index >= 0 && index < tablebase.size());
+                            assertFalse(rules + " index " + index + " given twice", indices.get((int) index));
+                            indices.set((int) index);
+                            boards++;
+                        }
+                        if (x == 0) {
+                            break;
+                        }
+                    }
+                }
+                assertEquals(tablebase.size(), boards);
+            }
+        }
+    }
+
+    @Test
+    public void resumedGenerationWritesTheSameFile() throws IOException {
+        Rules rules = new Rules(4, 3, 3);
+        Path whole = folder.getRoot().toPath().resolve("whole.tb");
+        Path resumed = folder.getRoot().toPath().resolve("resumed.tb");
+        Tablebase.generate(whole, rules, 1, layer -> { });
+
+        try {
+            Tablebase.generate(resumed, rules, 3, layer -> {
+                if (layer == 6) {
+                    throw new IllegalStateException("interrupted");
+                }
+            });
+            fail("the generation was not interrupted");
+        } catch (IllegalStateException e) {
+            // layer 6 is on disk, layer 5 is next
+        }
+        try {
+            Tablebase.open(resumed).close();
+            fail("an incomplete tablebase was opened");
+        } catch (IOException e) {
+            // expected
+        }
+
+        int[] layers = new int[1];
+        Tablebase.generate(resumed, rules, 3, layer -> layers[0]++);
+
+        assertEquals(6, layers[0]);
+        assertArrayEquals(Files.readAllBytes(whole), Files.readAllBytes(resumed));
+    }
+
+    @Test
+    public void standardTablebaseAgreesWithTheSearch() throws IOException {
+        try (Tablebase tablebase = generate(Rules.STANDARD)) {
+            Minimax minimax = new Minimax(new State(Rules.STANDARD), Constants.SearchMode.ALPHA_BETA);
+            compare(tablebase, minimax, new Position(Rules.STANDARD), new HashSet<>());
+        }
+    }
+
+    /**
+     * Compares the entry of a position with the search, and the position after the move of the
+     * entry with the entry, then does the same for every position reached from it not compared yet
+     */
+    private void compare(Tablebase tablebase, Minimax minimax, Position position, Set<Long> seen) {
+        if (!seen.add(position.code())) {
+            return;
+        }
+
+        short entry = tablebase.probe(position);
+        assertNotEquals(Tablebase.UNSOLVED, entry);
+        if (position.isGameOver()) {
+            assertEquals(-1, Tablebase.moveOf(entry));
+            assertEquals(0, Tablebase.pliesOf(entry));
+            return;
+        }
+
+        int score = minimax.minimax(position, position.emptyCount()).getScore();
+        int forMover = position.getTurn() == Constants.Player.O ? score : -score;
+        assertEquals("result of " + position.code(), Integer.signum(forMover),
+                     Integer.signum(Tablebase.scoreOf(entry)));
+
+        int move = Tablebase.moveOf(entry);
+        position.make(move);
+        short reply = tablebase.probe(position);
+        assertEquals(Tablebase.pliesOf(entry) - 1, Tablebase.pliesOf(reply));
+        assertEquals(-Integer.signum(Tablebase.scoreOf(entry)), Integer.signum(Tablebase.scoreOf(reply)));
+        position.unmake(move);
+
+        for (int word = 0; word < position.words(); word++) {
+            for (long empty = position.emptyCells(word); empty != 0; empty &= empty - 1) {
+                int next = word << 6 | Long.numberOfTrailingZeros(empty);
+                position.make(next);
+                compare(tablebase, minimax, position, seen);
+                position.unmake(next);
+            }
+        }
+    }
+
+    private static long binomial(int n, int k) {
+        long result = 1;
+        for (int i = 1; i <= k; i++) {
+            result = result * (n - k + i) / i;
+        }
+        return result;
+    }
+}
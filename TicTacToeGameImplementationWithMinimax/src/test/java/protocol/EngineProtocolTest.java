@@ -0,0 +1,177 @@
+package protocol;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Plays transcripts of commands through the protocol, checking the lines it answers with
+ * and when it gives its best move
+ * @author NkolasN
+ */
+public class EngineProtocolTest {
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+    private PipedWriter commands;
+    private Thread protocol;
+
+    @Before
+    public void start() throws IOException {
+        commands = new PipedWriter();
+        PipedReader in = new PipedReader(commands);
+        EngineProtocol engine = new EngineProtocol(in, new LineWriter());
+
+        protocol = new Thread(() -> {
+            try {
+                engine.run();
+            } catch (IOException | InterruptedException e) {
+                lines.add("failed: " + e);
+            }
+        }, "protocol");
+        protocol.start();
+    }
+
+    @After
+    public void quit() throws IOException, InterruptedException {
+        send("quit");
+        protocol.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        assertTrue("the protocol did not quit", !protocol.isAlive());
+    }
+
+    @Test
+    public void goReportsEveryDepthThenTheBestMove() throws Exception {
+        send("go depth 3");
+        List<String> answer = untilBestMove();
+
+        assertEquals(4, answer.size());
+        for (int depth = 1; depth <= 3; depth++) {
+            assertTrue(answer.get(depth - 1), answer.get(depth - 1).startsWith("info depth " + depth + " score "));
+        }
+        assertTrue(answer.get(3), answer.get(3).matches("bestmove [0-2],[0-2]"));
+    }
+
+    @Test
+    public void infiniteSearchWaitsForStop() throws Exception {
+        send("go infinite");
+        String line;
+        do {
+            line = next();
+        } while (!line.startsWith("info depth 9 "));
+
+        send("isready");
+        assertEquals("readyok", next());
+        send("stop");
+        assertTrue(next().startsWith("bestmove "));
+    }
+
+    @Test
+    public void stopEndsADeepSearch() throws Exception {
+        send("rules 15 15 5");
+        send("go depth 30");
+        assertTrue(next().startsWith("info depth 1 "));
+
+        send("stop");
+        List<String> answer = untilBestMove();
+        assertTrue(answer.size() < 10);
+    }
+
+    @Test
+    public void moveTimeAndNodesEndTheSearch() throws Exception {
+        send("rules 15 15 5");
+        send("go movetime 200");
+        assertTrue(untilBestMove().size() < 30);
+
+        send("rules 7 7 4");
+        send("go nodes 2000");
+        assertTrue(untilBestMove().size() < 20);
+    }
+
+    @Test
+    public void finishedGameHasNoBestMove() throws Exception {
+        send("position startpos moves 0,0 1,0 0,1 1,1 0,2");
+        send("go");
+
+        assertEquals("info string the game is over", next());
+        assertEquals("bestmove (none)", next());
+    }
+
+    @Test
+    public void invalidCommandsAreReported() throws Exception {
+        send("go depth x");
+        assertEquals("info string Not a number: x", next());
+
+        send("position startpos moves 0,0 0,0");
+        assertEquals("info string Illegal move 0,0", next());
+
+        send("isready");
+        assertEquals("readyok", next());
+    }
+
+    private void send(String command) throws IOException {
+        commands.write(command + "\n");
+        commands.flush();
+    }
+
+    private String next() throws InterruptedException {
+        String line = lines.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull("no answer", line);
+        return line;
+    }
+
+    /**
+     * @return the lines answered up to the best move, the best move last
+     */
+    private List<String> untilBestMove() throws InterruptedException {
+        List<String> answer = new ArrayList<>();
+        String line;
+        do {
+            line = next();
+            answer.add(line);
+        } while (!line.startsWith("bestmove"));
+        return answer;
+    }
+
+    /**
+     * Hands every line written to the queue of lines
+     */
+    private final class LineWriter extends Writer {
+
+        private final StringBuilder line = new StringBuilder();
+
+        @Override
+        public synchronized void write(char[] buffer, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                if (buffer[i] == '\n') {
+                    lines.add(line.toString());
+                    line.setLength(0);
+                } else if (buffer[i] != '\r') {
+                    line.append(buffer[i]);
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package server;
+
+import constants.Constants;
+import gamelogic.Position;
+import gamelogic.Rules;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks which sessions the store evicts, and that it finds every session it keeps after
+ * growing its tables and deleting sessions, on a single stripe and a clock set by the test
+ * @author NkolasN
+ */
+public class SessionStoreTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private SessionStore store(int maxSessions, long idleSeconds) {
+        return new SessionStore(Rules.STANDARD, maxSessions, idleSeconds, TimeUnit.SECONDS, 1, nanos::get);
+    }
+
+    private void advance(long seconds) {
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    @Test
+    public void fullStoreEvictsTheLeastRecentlyUsedSession() {
+        SessionStore store = store(3, 60);
+        long first = store.create();
+        long second = store.create();
+        long third = store.create();
+
+        assertNotNull(store.get(first));
+        assertTrue(store.update(third, new Position(Rules.STANDARD)));
+        long fourth = store.create();
+
+        assertNull(store.get(second));
+        assertNotNull(store.get(first));
+        assertNotNull(store.get(third));
+        assertNotNull(store.get(fourth));
+        assertEquals(3, store.size());
+        assertEquals(1, store.getEvictions());
+    }
+
+    @Test
+    public void idleSessionsExpire() {
+        SessionStore store = store(10, 10);
+        long idle = store.create();
+        advance(5);
+        long used = store.create();
+        long touched = store.create();
+
+        advance(4);
+        assertNotNull(store.get(touched));
+        advance(1);
+        assertNull(store.get(idle));
+        assertFalse(store.update(idle, new Position(Rules.STANDARD)));
+
+        advance(5);
+        assertEquals(1, store.evictExpired());
+        assertNull(store.get(used));
+        assertNotNull(store.get(touched));
+        assertEquals(1, store.size());
+        assertEquals(2, store.getEvictions());
+    }
+
+    @Test
+    public void sessionsAreFoundAfterGrowingAndDeleting() {
+        SessionStore store = store(1000, 60);
+        List<Long> ids = new ArrayList<>();
+        List<Position> positions = new ArrayList<>();
+
+        for (int i = 0; i < 1000; i++) {
+            Position position = new Position(Rules.STANDARD);
+            for (int move = i; move > 0 && !position.isGameOver(); move /= 9) {
+                if (!position.isMarkedBy(move % 9, Constants.Player.X)
+                    && !position.isMarkedBy(move % 9, Constants.Player.O)) {
+                    position.make(move % 9);
+                }
+            }
+            ids.add(store.create(position));
+            positions.add(position);
+        }
+        for (int i = 0; i < ids.size(); i += 3) {
+            assertTrue(store.remove(ids.get(i)));
+        }
+
+        for (int i = 0; i < ids.size(); i++) {
+            Position kept = store.get(ids.get(i));
+            if (i % 3 == 0) {
+                assertNull("removed session " + i, kept);
+                assertFalse(store.remove(ids.get(i)));
+            } else {
+                assertNotNull("session " + i, kept);
+                assertEquals("board of session " + i, positions.get(i).code(), kept.code());
+                assertEquals("turn of session " + i, positions.get(i).getTurn(), kept.getTurn());
+            }
+        }
+        assertEquals(666, store.size());
+        assertEquals(0, store.getEvictions());
+    }
+}